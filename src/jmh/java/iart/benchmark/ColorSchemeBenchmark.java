@@ -0,0 +1,93 @@
+package iart.benchmark;
+
+import iart.Main;
+import iart.color_schemes.ColorScheme;
+import iart.draw.DrawEvent;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long each of the shipped color schemes takes to pick the color of a shape, which is done once for
+ * every shape drawn, through both the JavaFX color API and the primitive ARGB one. The shapes are spread over the
+ * whole screen, since some schemes depend on the position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorSchemeBenchmark {
+	private static final int points = 1024; // Power of two, so the next point can be picked with a mask
+	private static final int batchSize = 64;
+
+	@Param({"grayscale_scheme.Grayscale", "rainbow_scheme.Rainbow", "fall_scheme.VertColorFall",
+			"fall_scheme.HorColorFall", "fall_scheme.VertGrayscaleFall", "fall_scheme.HorGrayscaleFall",
+			"wheel_scheme.ColorWheel", "wheel_scheme.GrayscaleWheel", "wheel_scheme.InvColorWheel",
+			"wheel_scheme.InvGrayscaleWheel"})
+	public String scheme;
+
+	@Param({"MOUSE_MOVE", "KEYSTROKE", "LMOUSE_PRESS"})
+	public DrawEvent drawEvent;
+
+	private ColorScheme colorScheme;
+	private final Point2D[] locations = new Point2D[points];
+	private final double[] x = new double[points], y = new double[points];
+	private final DrawEvent[] batchEvents = new DrawEvent[batchSize];
+	private final int[] batchColors = new int[batchSize];
+	private int next;
+
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		Main.screenWidth = 1920;
+		Main.screenHeight = 1080;
+
+		colorScheme = (ColorScheme) Class.forName("iart.color_schemes." + scheme + "Scheme").getConstructor()
+										 .newInstance();
+		colorScheme.startColorScheme();
+
+		Random rand = new Random(0);
+		for (int i = 0; i < points; i++) {
+			locations[i] = new Point2D.Double(rand.nextInt((int) Main.screenWidth),
+											  rand.nextInt((int) Main.screenHeight));
+			x[i] = locations[i].getX();
+			y[i] = locations[i].getY();
+		}
+		Arrays.fill(batchEvents, drawEvent);
+	}
+
+	@Benchmark
+	public Color getColor() {
+		return colorScheme.getColor(drawEvent, locations[next++ & (points - 1)]);
+	}
+
+	@Benchmark
+	public int getArgb() {
+		int i = next++ & (points - 1);
+		return colorScheme.getArgb(drawEvent, x[i], y[i]);
+	}
+
+	/**
+	 * Colors the same points as getArgb(), a batch at a time. The score is per batch, not per shape.
+	 */
+	@Benchmark
+	public int[] getArgbBatch() {
+		colorScheme.getArgb(batchEvents, x, y, batchColors, batchSize);
+		return batchColors;
+	}
+}
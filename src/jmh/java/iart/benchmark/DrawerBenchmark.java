@@ -0,0 +1,117 @@
+package iart.benchmark;
+
+import iart.Main;
+import iart.color_schemes.grayscale_scheme.GrayscaleScheme;
+import iart.draw.AbstractRasterTarget;
+import iart.draw.DrawEvent;
+import iart.draw.Drawer;
+import iart.draw.RasterRenderTarget;
+import iart.recorder.Recorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the Drawer takes to draw each kind of shape onto an off-screen raster, with shapes of the size
+ * the mouse and keyboard hooks produce. The grayscale scheme is used, since it is the cheapest, so the time is mostly
+ * spent rasterizing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrawerBenchmark {
+	private static final int screenWidth = 1920, screenHeight = 1080;
+	private static final int shapes = 1024; // Power of two, so the next shape can be picked with a mask
+	private static final int linesPerFrame = 16; // Mouse moves drawn per frame by a 1000 Hz mouse at 60 FPS
+
+	@Param({"1", "4"})
+	public double resMultiplier; // As in the Resolution Multiplier menu, which multiplies the area
+
+	@Param({"false", "true"})
+	public boolean preview;
+
+	@Param({"FAST", "SMOOTH"})
+	public AbstractRasterTarget.LineQuality lineQuality;
+
+	private Drawer drawer;
+	private final double[] x = new double[shapes], y = new double[shapes];
+	private final double[] dx = new double[shapes], dy = new double[shapes], size = new double[shapes];
+	private final double[] pathX = new double[shapes + 1], pathY = new double[shapes + 1];
+	private int next;
+
+	@Setup
+	public void setup() {
+		Recorder.resMultiplier = Math.sqrt(resMultiplier);
+		Recorder.colorScheme = new GrayscaleScheme();
+		Main.screenWidth = screenWidth * Recorder.resMultiplier;
+		Main.screenHeight = screenHeight * Recorder.resMultiplier;
+
+		RasterRenderTarget target = new RasterRenderTarget((int) Main.screenWidth, (int) Main.screenHeight,
+														   lineQuality);
+		drawer = new Drawer(target);
+		if (preview)
+			drawer.setPreviewTarget(new RasterRenderTarget(screenWidth / 4, screenHeight / 4, lineQuality));
+
+		Random rand = new Random(0);
+		for (int i = 0; i < shapes; i++) {
+			x[i] = rand.nextInt(screenWidth);
+			y[i] = rand.nextInt(screenHeight);
+			dx[i] = rand.nextInt(41) - 20;
+			dy[i] = rand.nextInt(41) - 20;
+			size[i] = rand.nextInt(40) + 5;
+		}
+
+		// A mouse path that moves a pixel at a time, slowly changing direction, as a high polling rate mouse reports
+		double angle = 0;
+		pathX[0] = screenWidth / 2;
+		pathY[0] = screenHeight / 2;
+		for (int i = 1; i <= shapes; i++) {
+			angle += rand.nextGaussian() * 0.1;
+			pathX[i] = Math.min(Math.max(pathX[i - 1] + Math.round(Math.cos(angle)), 0), screenWidth - 1);
+			pathY[i] = Math.min(Math.max(pathY[i - 1] + Math.round(Math.sin(angle)), 0), screenHeight - 1);
+		}
+	}
+
+	@Benchmark
+	public void drawLine() {
+		int i = next++ & (shapes - 1);
+		drawer.drawLine(x[i], y[i], x[i] + dx[i], y[i] + dy[i]);
+	}
+
+	/**
+	 * Draws the mouse path a line at a time, flushing it after each drain, as the renderer does. The score is per line.
+	 */
+	@Benchmark
+	public void drawMousePath() {
+		int i = next++ & (shapes - 1);
+		drawer.drawLine(pathX[i], pathY[i], pathX[i + 1], pathY[i + 1]);
+		if (next % linesPerFrame == 0)
+			drawer.flush();
+	}
+
+	@Benchmark
+	public void drawCircle() {
+		int i = next++ & (shapes - 1);
+		drawer.drawCircle(DrawEvent.LMOUSE_PRESS, x[i], y[i], size[i]);
+	}
+
+	@Benchmark
+	public void drawSquare() {
+		int i = next++ & (shapes - 1);
+		drawer.drawSquare(x[i], y[i], size[i]);
+	}
+}
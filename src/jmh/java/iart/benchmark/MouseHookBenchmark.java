@@ -0,0 +1,139 @@
+package iart.benchmark;
+
+import iart.Main;
+import iart.color_schemes.grayscale_scheme.GrayscaleScheme;
+import iart.draw.DisplayList;
+import iart.draw.DrawCommandBuffer;
+import iart.draw.Drawer;
+import iart.draw.RasterRenderTarget;
+import iart.input.InputListener;
+import iart.input.SyntheticInputSource;
+import iart.listeners.keyboard.KeyboardHook;
+import iart.listeners.mouse.MouseHook;
+import iart.recorder.Recorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the input path, from an event reaching the hooks to the shapes it produces being drawn, using events
+ * generated by a SyntheticInputSource, so no desktop is needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MouseHookBenchmark {
+	private static final int screenWidth = 1920, screenHeight = 1080;
+	private static final int moves = 1 << 16; // Power of two, so the next move can be picked with a mask
+
+	/**
+	 * Mouse moves fed straight to a MouseHook. The commands it produces are drained onto a display list after every
+	 * move, which is cheap, so the time is mostly spent in the hook and the command buffer.
+	 */
+	@State(Scope.Thread)
+	public static class HookState {
+		private final int[] x = new int[moves], y = new int[moves];
+		private final long[] time = new long[moves];
+		private int next;
+		private long timeOffset; // Keeps the times increasing when the moves start over
+
+		private MouseHook mouseHook;
+		private DrawCommandBuffer commands;
+		private DisplayList shapes;
+		private Drawer drawer;
+
+		@Setup
+		public void setup() {
+			SyntheticInputSource source = new SyntheticInputSource(0, screenWidth, screenHeight);
+			source.addListener(new InputListener() {
+				@Override
+				public void mouseMoved(int x, int y, long time) {
+					if (next < moves) {
+						HookState.this.x[next] = x;
+						HookState.this.y[next] = y;
+						HookState.this.time[next++] = time;
+					}
+				}
+			});
+			while (next < moves)
+				source.next();
+			next = 0;
+
+			startRecording(screenWidth, screenHeight);
+			commands = new DrawCommandBuffer(1 << 10);
+			mouseHook = new MouseHook(commands, screenWidth, screenHeight, 0);
+			shapes = new DisplayList(screenWidth, screenHeight);
+			drawer = new Drawer(shapes);
+		}
+
+		@TearDown
+		public void tearDown() {
+			Recorder.state = iart.recorder.State.STOPPED;
+		}
+	}
+
+	/**
+	 * A whole synthetic session, with clicks, keystrokes and pauses, fed to the mouse and keyboard hooks, and drawn
+	 * onto a full screen raster.
+	 */
+	@State(Scope.Thread)
+	public static class SessionState {
+		private SyntheticInputSource source;
+		private DrawCommandBuffer commands;
+		private Drawer drawer;
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			startRecording(screenWidth, screenHeight);
+			commands = new DrawCommandBuffer(1 << 10);
+			drawer = new Drawer(new RasterRenderTarget(screenWidth, screenHeight));
+
+			source = new SyntheticInputSource(0, screenWidth, screenHeight);
+			source.addListener(new MouseHook(commands, screenWidth, screenHeight, 0));
+			source.addListener(new KeyboardHook(commands, screenWidth, screenHeight));
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			Recorder.state = iart.recorder.State.STOPPED;
+		}
+	}
+
+	private static void startRecording(int width, int height) {
+		Recorder.state = iart.recorder.State.RECORDING;
+		Recorder.resMultiplier = 1d;
+		Recorder.colorScheme = new GrayscaleScheme();
+		Main.screenWidth = width;
+		Main.screenHeight = height;
+	}
+
+	@Benchmark
+	public int mouseMoved(HookState state) {
+		int i = state.next++ & (moves - 1);
+		if (i == 0 && state.next > 1) {
+			state.timeOffset += state.time[moves - 1];
+			state.shapes.fill(0);
+		}
+		state.mouseHook.mouseMoved(state.x[i], state.y[i], state.timeOffset + state.time[i]);
+		return state.commands.drain(state.drawer);
+	}
+
+	@Benchmark
+	public int syntheticEvent(SessionState state) {
+		state.source.next();
+		return state.commands.drain(state.drawer);
+	}
+}
@@ -0,0 +1,102 @@
+package iart.benchmark;
+
+import iart.Main;
+import iart.color_schemes.wheel_scheme.ColorWheelScheme;
+import iart.draw.DrawCommandBuffer;
+import iart.draw.Drawer;
+import iart.draw.TiledRenderTarget;
+import iart.image.PngWriter;
+import iart.input.SyntheticInputSource;
+import iart.listeners.keyboard.KeyboardHook;
+import iart.listeners.mouse.MouseHook;
+import iart.recorder.Recorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what saving a recording costs at several resolution multipliers: reading the pixels back out of the
+ * canvas, and encoding and writing them as a PNG file. The canvas is drawn with a synthetic session first, so the
+ * image compresses like a real one would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class SaveBenchmark {
+	private static final int screenWidth = 1920, screenHeight = 1080;
+	private static final int sessionEvents = 200_000;
+	private static final int stripHeight = 256; // Rows read at a time, as the PNG writer does
+
+	@Param({"1", "4", "16"})
+	public double resMultiplier; // As in the Resolution Multiplier menu, which multiplies the area
+
+	private TiledRenderTarget target;
+	private int[] strip;
+	private Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		Recorder.state = iart.recorder.State.RECORDING;
+		Recorder.resMultiplier = Math.sqrt(resMultiplier);
+		Recorder.colorScheme = new ColorWheelScheme();
+		Recorder.colorScheme.startColorScheme();
+		Main.screenWidth = (int) (screenWidth * Recorder.resMultiplier);
+		Main.screenHeight = (int) (screenHeight * Recorder.resMultiplier);
+
+		target = new TiledRenderTarget((int) Main.screenWidth, (int) Main.screenHeight);
+		target.fill(0xFF000000);
+		Drawer drawer = new Drawer(target);
+		DrawCommandBuffer commands = new DrawCommandBuffer(1 << 10);
+
+		SyntheticInputSource source = new SyntheticInputSource(0, screenWidth, screenHeight);
+		source.addListener(new MouseHook(commands, Main.screenWidth, Main.screenHeight, 0));
+		source.addListener(new KeyboardHook(commands, Main.screenWidth, Main.screenHeight));
+		for (int i = 0; i < sessionEvents; i++) {
+			source.next();
+			commands.drain(drawer);
+		}
+		drawer.flush();
+		Recorder.state = iart.recorder.State.STOPPED;
+
+		strip = new int[target.getWidth() * stripHeight];
+		file = Files.createTempFile("iart-benchmark", ".png");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		target.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public int[] readPixels() {
+		for (int y = 0; y < target.getHeight(); y += stripHeight) {
+			int rows = Math.min(stripHeight, target.getHeight() - y);
+			target.readPixels(0, y, target.getWidth(), rows, strip, 0, target.getWidth());
+		}
+		return strip;
+	}
+
+	@Benchmark
+	public long savePng() throws IOException {
+		new PngWriter(target, Recorder.pngCompressionLevel, Recorder.pngThreads).write(file);
+		return Files.size(file);
+	}
+}
@@ -1,29 +1,31 @@
 package iart;
 
 import iart.color_schemes.ColorSchemeSetup;
+import iart.draw.AbstractRasterTarget;
+import iart.draw.DirtyRegion;
+import iart.draw.PreviewFrames;
+import iart.input.NativeInputSource;
+import iart.metrics.Metrics;
 import iart.listeners.keyboard.KeyboardLayoutUI;
 import iart.recorder.Recorder;
 import iart.recorder.State;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Scene;
-import javafx.scene.SnapshotParameters;
 import javafx.scene.control.*;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
-import javafx.scene.transform.Transform;
+import javafx.scene.layout.HBox;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
-import org.jnativehook.GlobalScreen;
-import org.jnativehook.NativeHookException;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Date;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Entry point for application. Initializes the UI portion of the program. Also initializes the keyboard and mouse
@@ -49,12 +51,20 @@ public class Main extends Application {
 			stopRecording = new MenuItem("Stop");
 	private ImageView geomPreview = new ImageView(); // Canvas preview
 
-	private SnapshotParameters snapshotParameters = new SnapshotParameters();
+	private WritableImage previewImage;
+	private long lastPresentedFrame; // Sequence number of the last preview frame written to the preview image
 
 	// Location on disk of the keyboard layout
 	public static final String keysFileLoc = System.getProperty("user.home") + "/.iart_keys";
 
-	private static Spinner<Double> resMultiplierSpinner = new Spinner<>(1d, 16d, 1d, 0.1);
+	// Canvas tiles are only allocated when drawn on, so large multipliers do not use up memory until they are used
+	private Spinner<Double> resMultiplierSpinner = new Spinner<>(1d, 64d, 1d, 0.1);
+	private Spinner<Integer> previewFpsSpinner = new Spinner<>(1, 60, Recorder.previewFps);
+	private Spinner<Integer> pngLevelSpinner = new Spinner<>(0, 9, Recorder.pngCompressionLevel);
+	private Spinner<Integer> pngThreadsSpinner = new Spinner<>(1, 64, Recorder.pngThreads);
+
+	// Real mouse and keyboard, the hooks and the journal listen to it while recording
+	private final NativeInputSource nativeInput = new NativeInputSource();
 
 	public static void main(String[] args) {
 		launch(args);
@@ -62,15 +72,9 @@ public class Main extends Application {
 
 	@Override
 	public void start(Stage primaryStage) {
-		Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
-		logger.setLevel(Level.OFF);
-		logger.setUseParentHandlers(false);
-
-		try {
-			GlobalScreen.registerNativeHook();
-		} catch (NativeHookException e) {
-			e.printStackTrace();
-		}
+		Recorder.inputSource = nativeInput;
+		nativeInput.start();
+		Metrics.start();
 
 		// Get screen sizes, supports multiple monitors
 		for (Screen s : Screen.getScreens()) {
@@ -92,16 +96,48 @@ public class Main extends Application {
 		primaryStage.setTitle("iArt");
 		primaryStage.show();
 
-		primaryStage.setOnCloseRequest(event -> {
-			if (Recorder.state == State.RECORDING) {
-				Recorder.createIArtDirIfNotExists();
-				recorder.saveImage(new File(iArtFolderPath + new Date().toString()));
-			}
-			System.exit(0);
-		});
+		// Show the progress of the images being saved in the background in the window title
+		Recorder.getSavePipeline().setProgressListener((pendingSaves, progress) -> Platform.runLater(() -> {
+			if (pendingSaves == 0)
+				primaryStage.setTitle("iArt");
+			else
+				primaryStage.setTitle("iArt - Saving " + pendingSaves + " image(s) to disk... " +
+									  (int) (progress * 100) + "%");
+		}));
 
 		if (!Files.exists(Paths.get(keysFileLoc)))
 			new KeyboardLayoutUI(primaryStage);
+
+		/*
+		 * Drawing happens on the render thread of the recorder, which publishes preview frames at most as many times
+		 * per second as set in the Preview FPS menu. The latest one is presented once per frame pulse.
+		 */
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				refreshPreview();
+			}
+		}.start();
+	}
+
+	/**
+	 * Switches the window to showing the preview of the recording that was just started.
+	 */
+	private void showRecording() {
+		menuBar.setOpacity(0.5);
+		previewScene.setRoot(previewGroup = new Group(geomPreview, menuBar));
+		updatePreviewSize();
+		refreshPreview();
+	}
+
+	/**
+	 * Shows how much space the canvas could take up with the resolution multiplier currently chosen.
+	 *
+	 * @param canvasSizeEstimate Menu item on which to show the estimate
+	 */
+	private void updateCanvasSizeEstimate(MenuItem canvasSizeEstimate) {
+		long bytes = Recorder.estimateCanvasBytes(Math.sqrt(resMultiplierSpinner.getValue()));
+		canvasSizeEstimate.setText("Canvas size: up to " + (bytes >> 20) + " MB");
 	}
 
 	/**
@@ -127,12 +163,16 @@ public class Main extends Application {
 		resetKeyboardLayout.setOnAction(event -> new KeyboardLayoutUI(primaryStage));
 
 		startRecording.setOnAction(event -> {
-			if (recorder.startRecording(this, Math.sqrt(resMultiplierSpinner.getValue()))) {
-				menuBar.setOpacity(0.5);
-				previewScene.setRoot(previewGroup = new Group(geomPreview, menuBar));
-				updateSnapshotParams();
-				refreshPreview();
-			}
+			nativeInput.loadKeyboardLayout();
+			if (recorder.startRecording(Math.sqrt(resMultiplierSpinner.getValue())))
+				showRecording();
+		});
+
+		MenuItem resumeLastSession = new MenuItem("Resume last session");
+		resumeLastSession.setOnAction(event -> {
+			nativeInput.loadKeyboardLayout();
+			if (recorder.resumeLastSession())
+				showRecording();
 		});
 
 		pauseRecording.setOnAction(event -> recorder.pauseRecording(pauseRecording));
@@ -142,32 +182,93 @@ public class Main extends Application {
 				menuBar.setOpacity(1);
 		});
 
-		fileMenu.getItems().addAll(resetKeyboardLayout, new SeparatorMenuItem(), startRecording, pauseRecording,
-								   stopRecording);
+		CheckMenuItem recordInputJournal = new CheckMenuItem("Record input journal");
+		recordInputJournal.setSelected(Recorder.recordInputJournal);
+		recordInputJournal.selectedProperty().addListener(
+				(obs, oldVal, newVal) -> Recorder.recordInputJournal = newVal);
 
-		resMultiplierSpinner.setEditable(true);
+		CheckMenuItem smoothLines = new CheckMenuItem("Smooth mouse lines");
+		smoothLines.setSelected(Recorder.lineQuality == AbstractRasterTarget.LineQuality.SMOOTH);
+		smoothLines.selectedProperty().addListener((obs, oldVal, newVal) -> Recorder.lineQuality =
+				newVal ? AbstractRasterTarget.LineQuality.SMOOTH : AbstractRasterTarget.LineQuality.FAST);
+
+		fileMenu.getItems().addAll(resetKeyboardLayout, recordInputJournal, smoothLines, new SeparatorMenuItem(),
+								   startRecording, resumeLastSession, pauseRecording, stopRecording);
 
-		Menu resSpinnerMenu = new Menu("Resolution Multiplier", null, new CustomMenuItem(resMultiplierSpinner, false));
+		resMultiplierSpinner.setEditable(true);
+		previewFpsSpinner.setEditable(true);
+		previewFpsSpinner.valueProperty().addListener((obs, oldVal, newVal) -> Recorder.previewFps = newVal);
+
+		// Where the canvas is kept, with an estimate of how much space it could take up at the chosen multiplier
+		ToggleGroup canvasStorageGroup = new ToggleGroup();
+		RadioMenuItem heapCanvas = new RadioMenuItem("Keep canvas in memory");
+		RadioMenuItem mappedCanvas = new RadioMenuItem("Keep canvas in file (for very large multipliers)");
+		heapCanvas.setToggleGroup(canvasStorageGroup);
+		mappedCanvas.setToggleGroup(canvasStorageGroup);
+		canvasStorageGroup.selectToggle(Recorder.memoryMappedCanvas ? mappedCanvas : heapCanvas);
+		canvasStorageGroup.selectedToggleProperty().addListener(
+				(obs, oldVal, newVal) -> Recorder.memoryMappedCanvas = newVal == mappedCanvas);
+
+		MenuItem canvasSizeEstimate = new MenuItem();
+		canvasSizeEstimate.setDisable(true);
+		updateCanvasSizeEstimate(canvasSizeEstimate);
+		resMultiplierSpinner.valueProperty().addListener(
+				(obs, oldVal, newVal) -> updateCanvasSizeEstimate(canvasSizeEstimate));
+
+		Menu resSpinnerMenu = new Menu("Resolution Multiplier", null, new CustomMenuItem(resMultiplierSpinner, false),
+									   canvasSizeEstimate, new SeparatorMenuItem(), heapCanvas, mappedCanvas);
+		Menu previewFpsMenu = new Menu("Preview FPS", null, new CustomMenuItem(previewFpsSpinner, false));
+
+		pngLevelSpinner.valueProperty().addListener((obs, oldVal, newVal) -> Recorder.pngCompressionLevel = newVal);
+		pngThreadsSpinner.valueProperty().addListener((obs, oldVal, newVal) -> Recorder.pngThreads = newVal);
+		Menu pngMenu = new Menu("PNG Compression", null,
+								new CustomMenuItem(new HBox(5, new Label("Level"), pngLevelSpinner), false),
+								new CustomMenuItem(new HBox(5, new Label("Threads"), pngThreadsSpinner), false));
 
 		// Setup menu bar
-		menuBar.getMenus().addAll(fileMenu, resSpinnerMenu);
+		menuBar.getMenus().addAll(fileMenu, resSpinnerMenu, previewFpsMenu, pngMenu);
 		ColorSchemeSetup.setupColorSchemes(menuBar);
 
 		previewGroup.getChildren().addAll(menuBar);
 	}
 
 	/**
-	 * Refreshes the preview window in the main stage. Called when the window is active and a shape is drawn through
-	 * the Drawer class.
+	 * Refreshes the preview window in the main stage with the latest preview frame published by the render thread.
+	 * If the frame follows the last one presented, only the area that changed in between is copied, otherwise the
+	 * whole frame is. Called once per frame pulse, does nothing when the window is not active.
 	 */
 	public void refreshPreview() {
-		if (!windowFocused || recorder.getCanvas() == null)
+		if (!windowFocused || previewImage == null)
+			return;
+		PreviewFrames.Frame frame = recorder.takePreviewFrame();
+		if (frame == null)
 			return;
-		try {
-			geomPreview.setImage(recorder.getCanvas().snapshot(snapshotParameters, null));
-		} catch (Exception e) {
-			WritableImage img = Recorder.tiledNodeSnapshot(recorder.getCanvas());
-			geomPreview.setImage(img);
+		long start = Metrics.now();
+
+		int width = frame.getWidth(), height = frame.getHeight();
+		if (width != (int) previewImage.getWidth() || height != (int) previewImage.getHeight())
+			return; // Drawn before the window was resized, the frame with the new size will follow
+
+		int fromX = 0, fromY = 0, toX = width, toY = height;
+		if (frame.getSequence() == lastPresentedFrame + 1) {
+			DirtyRegion changed = frame.getChangedRegion();
+			fromX = changed.getMinX();
+			fromY = changed.getMinY();
+			toX = changed.getMaxX();
+			toY = changed.getMaxY();
+		}
+		lastPresentedFrame = frame.getSequence();
+
+		previewImage.getPixelWriter().setPixels(fromX, fromY, toX - fromX, toY - fromY,
+												PixelFormat.getIntArgbInstance(), frame.getPixels(),
+												fromY * width + fromX, width);
+
+		if (Metrics.enabled) {
+			long shown = System.nanoTime();
+			Metrics.previewFrameTime.record(shown - start);
+			if (frame.getInputTime() != 0)
+				Metrics.presentLatency.record(shown - frame.getInputTime());
+			Metrics.previewFrame();
 		}
 	}
 
@@ -177,14 +278,21 @@ public class Main extends Application {
 	 * @param stage Stage to set listeners for (primaryStage)
 	 */
 	private void setStageListeners(Stage stage) {
-		// Cleanup if window is closed, ensure all threads end
+		/*
+		 * Cleanup if window is closed: the recording in progress is stopped like with the Stop menu item, writing its
+		 * last checkpoint, and saved, the native hook is unregistered, and the program waits for the images being
+		 * saved before ensuring all threads end. This must be the only close
+		 * request handler of the stage, setting another one replaces it.
+		 */
 		stage.setOnCloseRequest(event -> {
-			Recorder.state = State.STOPPED;
-			try {
-				GlobalScreen.unregisterNativeHook();
-			} catch (NativeHookException e) {
-				e.printStackTrace();
+			if (Recorder.state == State.RECORDING) {
+				Recorder.createIArtDirIfNotExists();
+				recorder.stopRecording(new File(iArtFolderPath + new Date().toString()));
 			}
+			Recorder.state = State.STOPPED;
+			recorder.closeJournal();
+			nativeInput.stop();
+			Recorder.getSavePipeline().flush();
 			Platform.exit();
 			System.exit(0);
 		});
@@ -195,23 +303,26 @@ public class Main extends Application {
 		// Track if UI is resized, and update previewScene size appropriately
 		previewScene.widthProperty().addListener((obs, oldVal, newVal) -> {
 			sceneWidth = newVal.intValue();
-			updateSnapshotParams();
+			updatePreviewSize();
 			refreshPreview();
 		});
 		previewScene.heightProperty().addListener((obs, oldVal, newVal) -> {
 			sceneHeight = newVal.intValue();
-			updateSnapshotParams();
+			updatePreviewSize();
 			refreshPreview();
 		});
 	}
 
 	/**
-	 * Updates the snapshot parameters in order to accurately render the preview of the art being drawn. The snapshot
-	 * parameters take care of scaling the original image down to a size that is adequate for the preview window.
+	 * Reallocates the preview image and the preview render target to match the size of the preview window. The
+	 * preview target is only rebuilt here, from then on it is kept up to date by drawing every shape on it.
 	 */
-	private void updateSnapshotParams() {
-		snapshotParameters.setTransform(
-				Transform.scale(sceneWidth / (double) screenWidth, sceneHeight / (double) screenHeight)
-		);
+	private void updatePreviewSize() {
+		int width = Math.max((int) sceneWidth, 1), height = Math.max((int) sceneHeight, 1);
+
+		previewImage = new WritableImage(width, height);
+		geomPreview.setImage(previewImage);
+		lastPresentedFrame = -1; // The new image is blank, the next frame is presented whole
+		recorder.rebuildPreviewTarget(width, height);
 	}
 }
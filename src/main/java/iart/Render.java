@@ -0,0 +1,130 @@
+package iart;
+
+import iart.color_schemes.ColorScheme;
+import iart.draw.AbstractRasterTarget;
+import iart.draw.HeapTileStorage;
+import iart.draw.MappedTileStorage;
+import iart.draw.StampCache;
+import iart.draw.TileStorage;
+import iart.draw.TiledRenderTarget;
+import iart.image.PngWriter;
+import iart.recorder.InputJournalReader;
+import iart.recorder.JournalRenderer;
+import iart.recorder.Recorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line entry point that renders a session recorded in an input journal to a PNG file, without starting the
+ * UI or the native hooks, so it can run on a headless machine. Any resolution multiplier and color scheme can be used,
+ * and the image is rasterized and compressed using all cores by default.
+ * <p>
+ * Usage: iart.Render [options] journal.iartlog output.png
+ */
+public class Render {
+	private static final String usage =
+			"Usage: iart.Render [options] <journal> <output.png>\n" +
+			"  -m <multiplier>  Resolution multiplier, as in the Resolution Multiplier menu (default: as recorded)\n" +
+			"  -s <scheme>      Color scheme class, e.g. fall_scheme.VertColorFallScheme (default: as recorded)\n" +
+			"  -t <threads>     Number of threads to render and compress with (default: number of cores)\n" +
+			"  -l <level>       PNG compression level, 0-9 (default: " + Recorder.pngCompressionLevel + ")\n" +
+			"  -f               Keep the image in a memory-mapped file next to the output, instead of in memory\n" +
+			"  -a               Anti-alias the mouse lines (default: as recorded)";
+
+	public static void main(String[] args) {
+		Double resMultiplier = null;
+		String schemeName = null;
+		int threads = Runtime.getRuntime().availableProcessors(), level = Recorder.pngCompressionLevel;
+		boolean mapped = false;
+		AbstractRasterTarget.LineQuality lineQuality = null;
+		Path journalPath = null, outputPath = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-m":
+						resMultiplier = Math.sqrt(Double.parseDouble(args[++i])); // The menu multiplies the area
+						break;
+					case "-s":
+						schemeName = args[++i];
+						break;
+					case "-t":
+						threads = Integer.parseInt(args[++i]);
+						break;
+					case "-l":
+						level = Integer.parseInt(args[++i]);
+						break;
+					case "-f":
+						mapped = true;
+						break;
+					case "-a":
+						lineQuality = AbstractRasterTarget.LineQuality.SMOOTH;
+						break;
+					default:
+						if (journalPath == null)
+							journalPath = Paths.get(args[i]);
+						else if (outputPath == null)
+							outputPath = Paths.get(args[i]);
+						else
+							throw new IllegalArgumentException(args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			outputPath = null;
+		}
+		if (outputPath == null || level < 0 || level > 9) {
+			System.err.println(usage);
+			System.exit(1);
+		}
+
+		try (InputJournalReader journal = new InputJournalReader(journalPath)) {
+			if (resMultiplier == null)
+				resMultiplier = journal.getResMultiplier();
+			ColorScheme colorScheme = loadColorScheme(schemeName != null ? schemeName : journal.getColorSchemeName());
+
+			long start = System.nanoTime();
+			Path outputDir = outputPath.toAbsolutePath().getParent();
+			TileStorage storage = mapped ? new MappedTileStorage(outputDir) : new HeapTileStorage();
+			JournalRenderer renderer = new JournalRenderer(resMultiplier, colorScheme, lineQuality, threads);
+			try (TiledRenderTarget target = renderer.render(journal, storage)) {
+				System.out.println("Rendered " + target.getWidth() + "x" + target.getHeight() + " image in " +
+								   (System.nanoTime() - start) / 1_000_000 + " ms");
+				System.out.println("Mouse path: " + renderer.getLinesQueued() + " lines drawn with " +
+								   renderer.getPolylinesDrawn() + " polylines");
+				System.out.println("Circle stamps: " + StampCache.getHits() + " hits, " + StampCache.getMisses() +
+								   " misses (" + Math.round(StampCache.getHitRate() * 100) + "% hit rate)");
+
+				start = System.nanoTime();
+				PngWriter writer = new PngWriter(target, level, threads);
+				writer.setProgressListener(progress -> System.out.print("\rSaving... " + (int) (progress * 100) + "%"));
+				writer.write(outputPath);
+				System.out.println("\rSaved " + outputPath + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+			}
+		} catch (IOException e) {
+			System.err.println("Error rendering journal: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates an instance of a color scheme, given its class name, either fully qualified or relative to the
+	 * color_schemes package, with or without the "Scheme" suffix.
+	 *
+	 * @param name Class name of the color scheme
+	 * @return Color scheme instance
+	 */
+	private static ColorScheme loadColorScheme(String name) {
+		String[] candidates = {name, "iart.color_schemes." + name, "iart.color_schemes." + name + "Scheme"};
+		for (String candidate : candidates) {
+			try {
+				return (ColorScheme) Class.forName(candidate).newInstance();
+			} catch (ReflectiveOperationException | ClassCastException ignored) {
+			}
+		}
+		System.err.println("Unknown color scheme: " + name);
+		System.exit(1);
+		return null;
+	}
+}
@@ -0,0 +1,128 @@
+package iart.color_schemes;
+
+/**
+ * Values that depend only on the position on the screen, such as the angle and distance from the centre, sampled on
+ * a coarse grid over a rectangle and interpolated between the samples. Schemes that compute colors from expensive
+ * functions of the position can build fields once, when they start or when the screen size changes, and look up the
+ * values for each shape instead of computing them again.
+ * <p>
+ * Interpolation assumes the values change smoothly within the rectangle, so a function that jumps along some line,
+ * such as the angle around a point, should be split into several fields that meet at that line.
+ */
+public class ColorField {
+	/**
+	 * Computes the values of the field at a position. Called once per sample when the field is built.
+	 */
+	public interface Sampler {
+		/**
+		 * @param x      X coordinate of the sample, in screen pixels
+		 * @param y      Y coordinate of the sample, in screen pixels
+		 * @param values Array in which to store the value of each channel of the field at the sample
+		 */
+		void sample(double x, double y, double[] values);
+	}
+
+	private final double minX, minY, maxX, maxY;
+	private final int channels;
+	private final int columns, rows; // Number of samples in each direction
+	private final double stepX, stepY; // Distance between samples, in screen pixels
+	private final float[] samples;
+
+	/**
+	 * Builds a field covering a rectangle of the screen, edges included.
+	 *
+	 * @param minX     Left edge of the rectangle, in screen pixels
+	 * @param minY     Top edge of the rectangle, in screen pixels
+	 * @param maxX     Right edge of the rectangle, in screen pixels
+	 * @param maxY     Bottom edge of the rectangle, in screen pixels
+	 * @param channels Number of values stored for each sample
+	 * @param maxStep  Largest distance between two samples, in screen pixels
+	 * @param sampler  Function giving the values of the field at each sample
+	 */
+	public ColorField(double minX, double minY, double maxX, double maxY, int channels, double maxStep,
+					  Sampler sampler) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.channels = channels;
+		columns = Math.max((int) Math.ceil((maxX - minX) / maxStep), 1) + 1;
+		rows = Math.max((int) Math.ceil((maxY - minY) / maxStep), 1) + 1;
+		stepX = maxX > minX ? (maxX - minX) / (columns - 1) : 1d;
+		stepY = maxY > minY ? (maxY - minY) / (rows - 1) : 1d;
+		samples = new float[columns * rows * channels];
+
+		double[] values = new double[channels];
+		for (int row = 0, i = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				// The last sample is placed on the edge itself, rather than where the steps add up to
+				sampler.sample(column == columns - 1 ? maxX : minX + column * stepX,
+							   row == rows - 1 ? maxY : minY + row * stepY, values);
+				for (int channel = 0; channel < channels; channel++)
+					samples[i++] = (float) values[channel];
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of a channel at a position, interpolated between the four samples around it. Positions
+	 * outside the rectangle take the value at the nearest edge.
+	 *
+	 * @param x       X coordinate, in screen pixels
+	 * @param y       Y coordinate, in screen pixels
+	 * @param channel Channel to look up
+	 * @return Interpolated value
+	 */
+	public double get(double x, double y, int channel) {
+		double cellX = cellX(x), cellY = cellY(y);
+		int column = Math.min((int) cellX, columns - 2), row = Math.min((int) cellY, rows - 2);
+		double fx = cellX - column, fy = cellY - row;
+		int i = (row * columns + column) * channels + channel;
+		int right = channels, down = columns * channels;
+
+		double top = samples[i] + (samples[i + right] - samples[i]) * fx;
+		double bottom = samples[i + down] + (samples[i + down + right] - samples[i + down]) * fx;
+		return top + (bottom - top) * fy;
+	}
+
+	/**
+	 * Returns the value of a channel holding an angle in degrees, interpolated the short way around the circle, so
+	 * that samples on either side of 0/360 degrees do not interpolate through 180 degrees.
+	 *
+	 * @param x       X coordinate, in screen pixels
+	 * @param y       Y coordinate, in screen pixels
+	 * @param channel Channel to look up
+	 * @return Interpolated angle, in degrees, possibly outside the 0-360 range
+	 */
+	public double getAngle(double x, double y, int channel) {
+		double cellX = cellX(x), cellY = cellY(y);
+		int column = Math.min((int) cellX, columns - 2), row = Math.min((int) cellY, rows - 2);
+		double fx = cellX - column, fy = cellY - row;
+		int i = (row * columns + column) * channels + channel;
+		int right = channels, down = columns * channels;
+
+		double topLeft = samples[i];
+		double topRight = nearestTurn(samples[i + right], topLeft);
+		double bottomLeft = nearestTurn(samples[i + down], topLeft);
+		double bottomRight = nearestTurn(samples[i + down + right], topLeft);
+		double top = topLeft + (topRight - topLeft) * fx;
+		double bottom = bottomLeft + (bottomRight - bottomLeft) * fx;
+		return top + (bottom - top) * fy;
+	}
+
+	private double cellX(double x) {
+		return (Math.min(Math.max(x, minX), maxX) - minX) / stepX;
+	}
+
+	private double cellY(double y) {
+		return (Math.min(Math.max(y, minY), maxY) - minY) / stepY;
+	}
+
+	private static double nearestTurn(double angle, double reference) {
+		if (angle - reference > 180)
+			return angle - 360;
+		if (reference - angle > 180)
+			return angle + 360;
+		return angle;
+	}
+}
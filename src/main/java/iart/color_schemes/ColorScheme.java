@@ -1,5 +1,6 @@
 package iart.color_schemes;
 
+import iart.draw.Argb;
 import iart.draw.DrawEvent;
 import javafx.scene.paint.Color;
 
@@ -21,24 +22,16 @@ public interface ColorScheme {
 	/**
 	 * Contains all super schemes, which are classes that inherit ColorScheme, and have any number of subschemes.
 	 * Any subschemes of the superschemes must include any packages it is in, below the color_schemes package.
-	 * Example: fall_scheme.HorColorFallScheme
+	 * Example: fall_scheme.HorColorFallScheme. Loaded by ColorSchemeSetup from the color_schemes.index resource.
 	 */
 	HashMap<String, ArrayList<String>> superSchemes = new HashMap<>();
 
 	/**
-	 * Contains all ColorScheme implementations that were loaded by Main.loadColorSchemes(). Useful for swapping
-	 * between color schemes, and easily adding new ones.
+	 * Contains the ColorScheme implementations that have been selected in the Color Scheme menu, created the first
+	 * time each one is selected. Useful for swapping between color schemes without losing their state.
 	 */
 	HashMap<String, ColorScheme> colorSchemes = new HashMap<>();
 
-	/**
-	 * Registers a super scheme in the superSchemes hashmap. A super scheme is a class that implements (or inherits)
-	 * ColorScheme, and that has any number of subclasses. This allows them to be put in a submenu in the UI, and
-	 * keep all the schemes tidy. Any subschemes of the superschemes must include any packages it is in, below the
-	 * color_schemes package. Example: fall_scheme.HorColorFallScheme, instead of simply HorColorFallScheme.
-	 */
-	void registerSuperScheme();
-
 	/**
 	 * Returns a color depending on the shape being drawn and a position on the screen(s).
 	 *
@@ -48,6 +41,34 @@ public interface ColorScheme {
 	 */
 	Color getColor(DrawEvent drawEvent, Point2D eventLoc);
 
+	/**
+	 * Returns the same color as getColor(), packed into an ARGB integer. This is what the Drawer uses for every shape,
+	 * so implementations should override it to compute the color without allocating any objects. The default
+	 * implementation converts the result of getColor().
+	 *
+	 * @param drawEvent Shape being drawn
+	 * @param x         X coordinate of the mouse when the draw event was triggered
+	 * @param y         Y coordinate of the mouse when the draw event was triggered
+	 * @return ARGB color to use when drawing the shape specified by drawEvent
+	 */
+	default int getArgb(DrawEvent drawEvent, double x, double y) {
+		return Argb.fromColor(getColor(drawEvent, new Point2D.Double(x, y)));
+	}
+
+	/**
+	 * Returns the colors of a batch of shapes, as getArgb() would for each of them in order.
+	 *
+	 * @param drawEvents Shapes being drawn
+	 * @param x          X coordinates of the mouse when each draw event was triggered
+	 * @param y          Y coordinates of the mouse when each draw event was triggered
+	 * @param dst        Array in which to store the ARGB color of each shape
+	 * @param count      Number of shapes, from the start of the arrays
+	 */
+	default void getArgb(DrawEvent[] drawEvents, double[] x, double[] y, int[] dst, int count) {
+		for (int i = 0; i < count; i++)
+			dst[i] = getArgb(drawEvents[i], x[i], y[i]);
+	}
+
 	/**
 	 * Allows a color scheme to set itself up before it starts being used, if necessary.
 	 */
@@ -1,23 +1,26 @@
 package iart.color_schemes;
 
-import iart.Main;
 import iart.recorder.Recorder;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ToggleGroup;
-import org.clapper.util.classutil.*;
 
-import java.io.File;
-import java.net.URISyntaxException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 
 /**
  * This class provides a static method to setup all the color schemes, and add them to the main window menu bar, so
- * the user can select them as desired.
+ * the user can select them as desired. The schemes are listed in an index bundled with the application, and each
+ * one is only created when it is first selected.
  */
 public class ColorSchemeSetup {
+	private static final String indexResource = "color_schemes.index";
 
 	/**
 	 * Sets up all color schemes defined in ColorScheme.topLevelSchemes. Any subschemes (including superschemes that
@@ -30,24 +33,10 @@ public class ColorSchemeSetup {
 		Menu colorSchemeMenu = new Menu("Color Scheme");
 		ToggleGroup tGroup = new ToggleGroup();
 
-		ClassFinder finder = new ClassFinder();
 		try {
-			finder.add(new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
-		}
-		ClassFilter filter = new AndClassFilter(new SubclassClassFilter(ColorScheme.class));
-
-		Collection<ClassInfo> colorSchemes = new ArrayList<>();
-		finder.findClasses(colorSchemes, filter);
-
-		for (ClassInfo classInfo : colorSchemes) {
-			try {
-				((ColorScheme) (Class.forName(classInfo.getClassName()).getConstructor().newInstance()))
-						.registerSuperScheme();
-			} catch (Exception e) {
-				System.err.println("Error setting up: " + classInfo.getClassName());
-			}
+			loadIndex();
+		} catch (IOException e) {
+			System.err.println("Error loading color scheme index: " + e.getMessage());
 		}
 
 		for (String superScheme : ColorScheme.topLevelSchemes)
@@ -70,30 +59,23 @@ public class ColorSchemeSetup {
 		ArrayList<String> subSchemes = ColorScheme.superSchemes.get(scheme);
 
 		if (subSchemes == null || subSchemes.size() == 1) {
-			try {
-				if (subSchemes == null)
-					ColorScheme.colorSchemes.put(
-							scheme, (ColorScheme) Class.forName("iart.color_schemes." + scheme + "Scheme")
-													   .getConstructor().newInstance()
-					);
-				else // if (subSchemes.size() == 1)
-					ColorScheme.colorSchemes.putIfAbsent(
-							scheme, (ColorScheme) Class.forName("iart.color_schemes." + subSchemes.get(0) + "Scheme")
-													   .getConstructor().newInstance()
-					);
-
-				String[] schemeDisplayName = scheme.split("\\.");
-				RadioMenuItem schemeItem = new RadioMenuItem(schemeDisplayName[schemeDisplayName.length - 1]);
-				schemeItem.setToggleGroup(toggleGroup);
-				schemeItem.setOnAction(event -> Recorder.colorScheme = swapColorScheme(scheme));
-
-				// If scheme is the default scheme, set checkmark
-				if (Recorder.colorScheme.getClass() == ColorScheme.colorSchemes.get(scheme).getClass())
-					schemeItem.setSelected(true);
-				parentMenu.getItems().add(schemeItem);
-			} catch (Exception e) {
-				System.err.println("Color scheme \"" + scheme + "\" could not be found.");
+			String className = "iart.color_schemes." + (subSchemes == null ? scheme : subSchemes.get(0)) + "Scheme";
+
+			String[] schemeDisplayName = scheme.split("\\.");
+			RadioMenuItem schemeItem = new RadioMenuItem(schemeDisplayName[schemeDisplayName.length - 1]);
+			schemeItem.setToggleGroup(toggleGroup);
+			schemeItem.setOnAction(event -> {
+				ColorScheme newScheme = getColorScheme(scheme, className);
+				if (newScheme != null)
+					Recorder.colorScheme = swapColorScheme(newScheme);
+			});
+
+			// If scheme is the default scheme, set checkmark, and reuse the default instance when it is selected
+			if (Recorder.colorScheme.getClass().getName().equals(className)) {
+				ColorScheme.colorSchemes.putIfAbsent(scheme, Recorder.colorScheme);
+				schemeItem.setSelected(true);
 			}
+			parentMenu.getItems().add(schemeItem);
 		} else {
 			Menu subMenu = new Menu(scheme);
 			for (String subScheme : subSchemes)
@@ -102,16 +84,64 @@ public class ColorSchemeSetup {
 		}
 	}
 
+	/**
+	 * Reads the super schemes and their subschemes from the index into ColorScheme.superSchemes. Each line of the
+	 * index holds the name of a super scheme, a colon, and the names of its subschemes separated by spaces. Empty
+	 * lines and lines starting with # are ignored.
+	 *
+	 * @throws IOException If the index could not be found or read
+	 */
+	private static void loadIndex() throws IOException {
+		InputStream index = ColorSchemeSetup.class.getResourceAsStream(indexResource);
+		if (index == null)
+			throw new IOException(indexResource + " not found");
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(index, StandardCharsets.UTF_8))) {
+			for (String line; (line = reader.readLine()) != null; ) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				int colon = line.indexOf(':');
+				if (colon < 0) {
+					System.err.println("Malformed line in color scheme index: " + line);
+					continue;
+				}
+				String[] subSchemes = line.substring(colon + 1).trim().split("\\s+");
+				ColorScheme.superSchemes.putIfAbsent(line.substring(0, colon).trim(),
+													 new ArrayList<>(Arrays.asList(subSchemes)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the instance of a scheme, creating it the first time the scheme is selected.
+	 *
+	 * @param scheme    Name of the scheme in the menu
+	 * @param className Fully qualified name of the class implementing the scheme
+	 * @return Instance of the scheme, or null if it could not be created
+	 */
+	private static ColorScheme getColorScheme(String scheme, String className) {
+		ColorScheme colorScheme = ColorScheme.colorSchemes.get(scheme);
+		if (colorScheme == null) {
+			try {
+				colorScheme = (ColorScheme) Class.forName(className).getConstructor().newInstance();
+				ColorScheme.colorSchemes.put(scheme, colorScheme);
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				System.err.println("Color scheme \"" + scheme + "\" could not be found.");
+			}
+		}
+		return colorScheme;
+	}
+
 	/**
 	 * Allows the active color scheme to do some cleanup if necessary before being swapped.
 	 *
-	 * @param colorSchemeStr Name of the color scheme that is to replace the active one
-	 * @return ColorScheme corresponding to the name passed as an argument
+	 * @param newScheme Color scheme that is to replace the active one
+	 * @return The color scheme passed as an argument, started
 	 */
-	private static ColorScheme swapColorScheme(String colorSchemeStr) {
+	private static ColorScheme swapColorScheme(ColorScheme newScheme) {
 		Recorder.colorScheme.stopColorScheme();
-
-		ColorScheme newScheme = ColorScheme.colorSchemes.get(colorSchemeStr);
 		newScheme.startColorScheme();
 		return newScheme;
 	}
@@ -0,0 +1,60 @@
+package iart.color_schemes;
+
+import iart.draw.Argb;
+
+/**
+ * Converts colors in the HSB color model to ARGB integers using a table of fully saturated, fully bright colors, one
+ * per degree of hue. The channels of those colors change linearly between whole degrees, so interpolating between
+ * two entries gives the exact color for any hue, and saturation and brightness are then applied with a blend
+ * towards white and a scale towards black. No trigonometry, division or allocation is involved.
+ * <p>
+ * Since the hue is just an index into the table, schemes whose hue changes over time can keep their other
+ * precomputed values, and rotate the hue when looking up the color.
+ */
+public final class HueTable {
+	private static final float[] red = new float[361], green = new float[361], blue = new float[361];
+
+	static {
+		for (int hue = 0; hue <= 360; hue++) {
+			int argb = Argb.hsb(hue, 1d, 1d, 1d);
+			red[hue] = ((argb >> 16) & 0xFF) / 255f;
+			green[hue] = ((argb >> 8) & 0xFF) / 255f;
+			blue[hue] = (argb & 0xFF) / 255f;
+		}
+	}
+
+	private HueTable() {
+	}
+
+	/**
+	 * Converts a color given in the HSB color model, giving the same result as Argb.hsb(), give or take one step of a
+	 * channel due to rounding.
+	 *
+	 * @param hue        Hue, in degrees, any value is wrapped around to 0-360
+	 * @param saturation Saturation, from 0 to 1
+	 * @param brightness Brightness, from 0 to 1
+	 * @param opacity    Opacity, from 0 to 1
+	 * @return ARGB representation of the color
+	 */
+	public static int hsb(double hue, double saturation, double brightness, double opacity) {
+		saturation = Math.min(Math.max(saturation, 0d), 1d);
+		brightness = Math.min(Math.max(brightness, 0d), 1d);
+
+		hue %= 360;
+		if (hue < 0)
+			hue += 360;
+		if (hue >= 360) // A tiny negative hue rounds up to 360 when wrapped
+			hue -= 360;
+		int index = (int) hue;
+		float f = (float) (hue - index);
+
+		float r = red[index] + (red[index + 1] - red[index]) * f;
+		float g = green[index] + (green[index + 1] - green[index]) * f;
+		float b = blue[index] + (blue[index + 1] - blue[index]) * f;
+
+		// Desaturating blends towards white, darkening scales towards black
+		double white = 1d - saturation;
+		return Argb.fromChannels(opacity, brightness * (white + saturation * r), brightness * (white + saturation * g),
+								 brightness * (white + saturation * b));
+	}
+}
@@ -2,15 +2,15 @@ package iart.color_schemes.fall_scheme;
 
 import iart.Main;
 import iart.color_schemes.ColorScheme;
+import iart.color_schemes.HueTable;
+import iart.draw.Argb;
 import iart.draw.DrawEvent;
+import iart.input.InputListener;
+import iart.recorder.Recorder;
+import iart.recorder.SessionRandom;
 import javafx.scene.paint.Color;
-import org.jnativehook.GlobalScreen;
-import org.jnativehook.mouse.NativeMouseWheelEvent;
-import org.jnativehook.mouse.NativeMouseWheelListener;
 
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * This class and its subclasses implement a color scheme that creates the following effect. The topmost or leftmost
@@ -20,19 +20,12 @@ import java.util.Arrays;
  * between them too. The mouse wheel changes the hue of the color being drawn, which means grayscale implementations
  * do not need the mouse wheel listener.
  */
-public class FallScheme implements ColorScheme, NativeMouseWheelListener {
-	private int currHue = (int) (Math.random() * 255);
+public class FallScheme implements ColorScheme, InputListener {
+	private int currHue = -1; // Picked the first time the scheme is started, then only changed by the mouse wheel
 
 	boolean vertical; // Orientation of the color fall
 	boolean grayscale; // True if grayscale fall should be used, false if color fall should be used
 
-	@Override
-	public void registerSuperScheme() {
-		String[] schemes = {"fall_scheme.VertColorFall", "fall_scheme.HorColorFall", "fall_scheme.VertGrayscaleFall",
-							"fall_scheme.HorGrayscaleFall"};
-		ColorScheme.superSchemes.putIfAbsent("Fall", new ArrayList<>(Arrays.asList(schemes)));
-	}
-
 	@Override
 	public Color getColor(DrawEvent drawEvent, Point2D eventLoc) {
 		double locToEdegeRatio = 0d;
@@ -47,15 +40,15 @@ public class FallScheme implements ColorScheme, NativeMouseWheelListener {
 								);
 			case KEYSTROKE:
 				return Color.hsb(grayscale ? 0d : currHue,
-								 grayscale ? 0d : Math.min(1d - locToEdegeRatio + (Math.random() / 10d), 1d),
-								 grayscale ? Math.min(locToEdegeRatio + (Math.random() / 10d), 1d) : 1d,
-								 Math.random()
+								 grayscale ? 0d : Math.min(1d - locToEdegeRatio + noise(), 1d),
+								 grayscale ? Math.min(locToEdegeRatio + noise(), 1d) : 1d,
+								 SessionRandom.nextDouble()
 								);
 			case LMOUSE_PRESS:
 				return Color.hsb(grayscale ? 0d : currHue,
-								 grayscale ? 0d : Math.max(1d - locToEdegeRatio - (Math.random() / 10d), 0d),
-								 grayscale ? Math.max(locToEdegeRatio - (Math.random() / 10d), 0d) : 1d,
-								 Math.random()
+								 grayscale ? 0d : Math.max(1d - locToEdegeRatio - noise(), 0d),
+								 grayscale ? Math.max(locToEdegeRatio - noise(), 0d) : 1d,
+								 SessionRandom.nextDouble()
 								);
 			case MOVE_OUTER_CIRCLE:
 				return grayscale ? Color.BLACK : Color.WHITE;
@@ -67,19 +60,66 @@ public class FallScheme implements ColorScheme, NativeMouseWheelListener {
 		}
 	}
 
+	@Override
+	public int getArgb(DrawEvent drawEvent, double x, double y) {
+		return getArgb(drawEvent, vertical ? y / Main.screenHeight : x / Main.screenWidth, currHue);
+	}
+
+	@Override
+	public void getArgb(DrawEvent[] drawEvents, double[] x, double[] y, int[] dst, int count) {
+		double[] coords = vertical ? y : x;
+		double size = vertical ? Main.screenHeight : Main.screenWidth;
+		int hue = currHue;
+		for (int i = 0; i < count; i++)
+			dst[i] = getArgb(drawEvents[i], coords[i] / size, hue);
+	}
+
+	private int getArgb(DrawEvent drawEvent, double locToEdgeRatio, int hue) {
+		switch (drawEvent) {
+			case MOUSE_MOVE:
+				return grayscale ? Argb.gray(locToEdgeRatio, 1) : HueTable.hsb(hue, 1d - locToEdgeRatio, 1d, 1);
+			case KEYSTROKE:
+				return grayscale ? Argb.gray(Math.min(locToEdgeRatio + noise(), 1d), SessionRandom.nextDouble())
+								 : HueTable.hsb(hue, Math.min(1d - locToEdgeRatio + noise(), 1d), 1d,
+											SessionRandom.nextDouble());
+			case LMOUSE_PRESS:
+				return grayscale ? Argb.gray(Math.max(locToEdgeRatio - noise(), 0d), SessionRandom.nextDouble())
+								 : HueTable.hsb(hue, Math.max(1d - locToEdgeRatio - noise(), 0d), 1d,
+											SessionRandom.nextDouble());
+			case MOVE_OUTER_CIRCLE:
+				return grayscale ? 0xFF000000 : 0xFFFFFFFF;
+			case MOVE_INNER_CIRCLE:
+			case BACKGROUND:
+				return grayscale ? 0xFFFFFFFF : 0xFF000000;
+			default:
+				return 0xFFFFFFFF;
+		}
+	}
+
+	/**
+	 * Small random variation added to the saturation or brightness of keystrokes and mouse presses.
+	 */
+	private static double noise() {
+		return SessionRandom.nextDouble() / 10d;
+	}
+
 	@Override
 	public void startColorScheme() {
-		GlobalScreen.addNativeMouseWheelListener(this);
+		if (currHue < 0) // Picked from the session, so renders are reproducible, and kept when switching schemes
+			currHue = (int) (SessionRandom.nextDouble() * 255);
+		if (Recorder.inputSource != null)
+			Recorder.inputSource.addListener(this);
 	}
 
 	@Override
 	public void stopColorScheme() {
-		GlobalScreen.removeNativeMouseWheelListener(this);
+		if (Recorder.inputSource != null)
+			Recorder.inputSource.removeListener(this);
 	}
 
 	@Override
-	public void nativeMouseWheelMoved(NativeMouseWheelEvent nativeMouseWheelEvent) {
-		currHue += nativeMouseWheelEvent.getWheelRotation();
+	public void mouseWheelMoved(int rotation, long time) {
+		currHue += rotation;
 
 		if (currHue >= 360) currHue -= 360;
 		else if (currHue < 0) currHue += 360;
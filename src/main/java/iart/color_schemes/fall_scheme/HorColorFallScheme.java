@@ -8,8 +8,4 @@ public class HorColorFallScheme extends FallScheme {
 	public HorColorFallScheme() {
 		vertical = grayscale = false;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
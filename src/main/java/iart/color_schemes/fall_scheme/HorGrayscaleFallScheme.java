@@ -10,10 +10,6 @@ public class HorGrayscaleFallScheme extends FallScheme {
 		vertical = false;
 	}
 
-	@Override
-	public void registerSuperScheme() {
-	}
-
 	@Override
 	public void startColorScheme() {
 	}
@@ -9,8 +9,4 @@ public class VertColorFallScheme extends FallScheme {
 		grayscale = false;
 		vertical = true;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
@@ -9,10 +9,6 @@ public class VertGrayscaleFallScheme extends FallScheme {
 		grayscale = vertical = true;
 	}
 
-	@Override
-	public void registerSuperScheme() {
-	}
-
 	@Override
 	public void startColorScheme() {
 	}
@@ -1,23 +1,17 @@
 package iart.color_schemes.grayscale_scheme;
 
 import iart.color_schemes.ColorScheme;
+import iart.draw.Argb;
 import iart.draw.DrawEvent;
+import iart.recorder.SessionRandom;
 import javafx.scene.paint.Color;
 
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Grayscale color scheme. Used when determining the color with which to draw various objects on screen.
  */
 public class GrayscaleScheme implements ColorScheme {
-	@Override
-	public void registerSuperScheme() {
-		ColorScheme.superSchemes.putIfAbsent("Grayscale",
-											 new ArrayList<>(Collections.singleton("grayscale_scheme.Grayscale")));
-	}
-
 	@Override
 	public Color getColor(DrawEvent drawEvent, Point2D eventLoc) {
 		switch (drawEvent) {
@@ -25,9 +19,9 @@ public class GrayscaleScheme implements ColorScheme {
 				return Color.BLACK;
 			case KEYSTROKE:
 			case LMOUSE_PRESS:
-				return Color.gray(Math.random() / 2.5, Math.random() / 2 + 0.5);
+				return Color.gray(SessionRandom.nextDouble() / 2.5, SessionRandom.nextDouble() / 2 + 0.5);
 			case MOVE_OUTER_CIRCLE:
-				double color = Math.random() / 4 + 0.75;
+				double color = SessionRandom.nextDouble() / 4 + 0.75;
 				return Color.gray(color, color);
 			case MOVE_INNER_CIRCLE:
 			case BACKGROUND:
@@ -37,6 +31,25 @@ public class GrayscaleScheme implements ColorScheme {
 		}
 	}
 
+	@Override
+	public int getArgb(DrawEvent drawEvent, double x, double y) {
+		switch (drawEvent) {
+			case MOUSE_MOVE:
+				return 0xFF000000;
+			case KEYSTROKE:
+			case LMOUSE_PRESS:
+				return Argb.gray(SessionRandom.nextDouble() / 2.5, SessionRandom.nextDouble() / 2 + 0.5);
+			case MOVE_OUTER_CIRCLE:
+				double color = SessionRandom.nextDouble() / 4 + 0.75;
+				return Argb.gray(color, color);
+			case MOVE_INNER_CIRCLE:
+			case BACKGROUND:
+				return 0xFFFFFFFF;
+			default:
+				return 0xFF000000;
+		}
+	}
+
 	@Override
 	public void startColorScheme() {
 	}
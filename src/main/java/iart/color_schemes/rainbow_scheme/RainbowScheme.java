@@ -1,19 +1,28 @@
 package iart.color_schemes.rainbow_scheme;
 
 import iart.color_schemes.ColorScheme;
+import iart.draw.Argb;
 import iart.draw.DrawEvent;
+import iart.recorder.SessionClock;
+import iart.recorder.SessionRandom;
 import javafx.scene.paint.Color;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
- * Rainbow color scheme. Used when determining the color with which to draw various objects on screen.
+ * Rainbow color scheme. Used when determining the color with which to draw various objects on screen. The color of
+ * the mouse lines cycles through the rainbow with the SessionClock, once every 768 milliseconds.
  */
 public class RainbowScheme implements ColorScheme {
 	private static ArrayList<Color> colors = new ArrayList<>();
-	private static long start = System.currentTimeMillis();
+	private static final int[] argbColors = new int[256 * 3]; // Same colors as above, packed for getArgb()
+
+	static {
+		for (int g = 0; g < 256; g++) argbColors[g] = Argb.pack(255, 255, g, 0);
+		for (int b = 0; b < 256; b++) argbColors[256 + b] = Argb.pack(255, 0, 255, b);
+		for (int r = 0; r < 256; r++) argbColors[512 + r] = Argb.pack(255, r, 0, 255);
+	}
 
 	/*
 	 * Load all RGB colors from red to blue, for fast use in getColor().
@@ -24,22 +33,16 @@ public class RainbowScheme implements ColorScheme {
 		for (int r = 0; r < 256; r++) colors.add(Color.rgb(r, 0, 255));
 	}
 
-	@Override
-	public void registerSuperScheme() {
-		ColorScheme.superSchemes.putIfAbsent("Rainbow",
-											 new ArrayList<>(Collections.singleton("rainbow_scheme.Rainbow")));
-	}
-
 	@Override
 	public Color getColor(DrawEvent drawEvent, Point2D eventLoc) {
 		switch (drawEvent) {
 			case MOUSE_MOVE:
-				return colors.get((int) (System.currentTimeMillis() - start) % colors.size());
+				return colors.get((int) (SessionClock.millis() % colors.size()));
 			case KEYSTROKE:
 			case LMOUSE_PRESS:
-				int r = (int) (Math.random() * 255);
-				int g = (int) (Math.random() * 255);
-				int b = (int) (Math.random() * 255);
+				int r = (int) (SessionRandom.nextDouble() * 255);
+				int g = (int) (SessionRandom.nextDouble() * 255);
+				int b = (int) (SessionRandom.nextDouble() * 255);
 				return Color.rgb(r, g, b, (r + g + b) / (3d * 255d));
 			case MOVE_OUTER_CIRCLE:
 				return Color.WHITE;
@@ -51,6 +54,41 @@ public class RainbowScheme implements ColorScheme {
 		}
 	}
 
+	@Override
+	public int getArgb(DrawEvent drawEvent, double x, double y) {
+		return getArgb(drawEvent, SessionClock.millis());
+	}
+
+	/**
+	 * Colors a batch of shapes as if they were all drawn at the same time, so the clock is only read once.
+	 */
+	@Override
+	public void getArgb(DrawEvent[] drawEvents, double[] x, double[] y, int[] dst, int count) {
+		long now = SessionClock.millis();
+		for (int i = 0; i < count; i++)
+			dst[i] = getArgb(drawEvents[i], now);
+	}
+
+	private static int getArgb(DrawEvent drawEvent, long now) {
+		switch (drawEvent) {
+			case MOUSE_MOVE:
+				return argbColors[(int) Math.floorMod(now, (long) argbColors.length)];
+			case KEYSTROKE:
+			case LMOUSE_PRESS:
+				int r = (int) (SessionRandom.nextDouble() * 255);
+				int g = (int) (SessionRandom.nextDouble() * 255);
+				int b = (int) (SessionRandom.nextDouble() * 255);
+				return Argb.fromChannels((r + g + b) / (3d * 255d), r / 255d, g / 255d, b / 255d);
+			case MOVE_OUTER_CIRCLE:
+				return 0xFFFFFFFF;
+			case MOVE_INNER_CIRCLE:
+			case BACKGROUND:
+				return 0xFF000000;
+			default:
+				return 0xFF000000;
+		}
+	}
+
 	@Override
 	public void startColorScheme() {
 	}
@@ -12,8 +12,4 @@ public class ColorWheelScheme extends WheelScheme {
 	public ColorWheelScheme() {
 		grayscale = inverted = false;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
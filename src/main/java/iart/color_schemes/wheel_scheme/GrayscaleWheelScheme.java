@@ -10,8 +10,4 @@ public class GrayscaleWheelScheme extends WheelScheme {
 		grayscale = true;
 		inverted = false;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
@@ -14,8 +14,4 @@ public class InvColorWheelScheme extends WheelScheme {
 		grayscale = false;
 		inverted = true;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
@@ -9,8 +9,4 @@ public class InvGrayscaleWheelScheme extends WheelScheme {
 	public InvGrayscaleWheelScheme() {
 		grayscale = inverted = true;
 	}
-
-	@Override
-	public void registerSuperScheme() {
-	}
 }
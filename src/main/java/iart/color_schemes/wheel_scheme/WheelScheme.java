@@ -1,33 +1,36 @@
 package iart.color_schemes.wheel_scheme;
 
+import iart.color_schemes.ColorField;
 import iart.color_schemes.ColorScheme;
+import iart.color_schemes.HueTable;
+import iart.draw.Argb;
 import iart.draw.DrawEvent;
 import iart.Main;
+import iart.recorder.SessionClock;
 import javafx.scene.paint.Color;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * This classes subclasses take advantage of the HSB color model to create a wheel of color. In essence, the
  * effect created is as if there was a wheel of color (such as the ones you find in color pickers) behind a layer of
  * black, and the mouse was scratching the black off to reveal the color behind it, or the grayscale in case a
- * grayscale subscheme was used.
+ * grayscale subscheme was used. The wheel turns by a degree every minute of the SessionClock.
  */
 public class WheelScheme implements ColorScheme {
 	boolean grayscale;
 	boolean inverted;
 
-	private long startTime;
-
-	@Override
-	public void registerSuperScheme() {
-		String[] schemes = {"wheel_scheme.ColorWheel", "wheel_scheme.GrayscaleWheel", "wheel_scheme.InvColorWheel",
-							"wheel_scheme.InvGrayscaleWheel"};
-		ColorScheme.superSchemes.putIfAbsent("Wheel", new ArrayList<>(Arrays.asList(schemes)));
-	}
+	// Angle, distance ratio and opacity at each position, for each quarter of the screen, see updateFields()
+	private static final int angleChannel = 0, ratioChannel = 1, opacityChannel = 2;
+	private static final int fieldResolution = 256; // Samples along the longest side of the screen
+	private static final double edgeOffset = 1e-3; // Distance from the centre lines of samples taken just inside
+	private ColorField[] fields;
+	private int fieldCentreX, fieldCentreY;
+	private double fieldWidth, fieldHeight;
+	private double exactRadius; // Half the size of the square around the centre where values are not interpolated
+	private final double[] exactValues = new double[3];
 
 	@Override
 	public Color getColor(DrawEvent drawEvent, Point2D eventLoc) {
@@ -49,7 +52,8 @@ public class WheelScheme implements ColorScheme {
 						(eventLoc.getY() - centrePoint.getY()) * (eventLoc.getY() - centrePoint.getY()) +
 						(eventLoc.getX() - centrePoint.getX()) * (eventLoc.getX() - centrePoint.getX())
 				);
-				double distToBorder = distToBorder(eventLoc.getX(), eventLoc.getY(), centrePoint);
+				double distToBorder = distToBorder(eventLoc.getX(), eventLoc.getY(), centrePoint.getX(),
+												   centrePoint.getY());
 				// Min/Max removes rounding errors, if there are any
 				double distToBorderRatio = Math.min(Math.max(distFromCentre / distToBorder, 0d), 1d);
 
@@ -64,6 +68,128 @@ public class WheelScheme implements ColorScheme {
 		}
 	}
 
+	/**
+	 * Same color as getColor(), looking up the angle and distance of the position in the color fields instead of
+	 * computing them.
+	 */
+	@Override
+	public int getArgb(DrawEvent drawEvent, double x, double y) {
+		updateFields();
+		return getArgb(drawEvent, x, y, SessionClock.millis() / 60000);
+	}
+
+	/**
+	 * Colors a batch of shapes as if they were all drawn at the same time, so the clock is only read once.
+	 */
+	@Override
+	public void getArgb(DrawEvent[] drawEvents, double[] x, double[] y, int[] dst, int count) {
+		updateFields();
+		long hueShift = SessionClock.millis() / 60000;
+		for (int i = 0; i < count; i++)
+			dst[i] = getArgb(drawEvents[i], x[i], y[i], hueShift);
+	}
+
+	private int getArgb(DrawEvent drawEvent, double x, double y, long hueShift) {
+		switch (drawEvent) {
+			case MOUSE_MOVE:
+			case KEYSTROKE:
+			case LMOUSE_PRESS:
+				if (x == fieldCentreX || y == fieldCentreY ||
+					(Math.abs(x - fieldCentreX) < exactRadius && Math.abs(y - fieldCentreY) < exactRadius)) {
+					// Values on the lines through the centre are odd, and the angle turns too fast near the centre to
+					// be interpolated, so those are computed, and converted, exactly
+					sampleField(x, y, fieldCentreX, fieldCentreY, exactValues);
+					return toArgb(drawEvent, exactValues[angleChannel], exactValues[ratioChannel],
+								  exactValues[opacityChannel], hueShift, true);
+				}
+
+				// Same conditions getColor() uses to tell which quarter of the screen the position is in
+				ColorField field = fields[(x < fieldCentreX ? 0 : 1) + (y > fieldCentreY ? 2 : 0)];
+				return toArgb(drawEvent, field.getAngle(x, y, angleChannel), field.get(x, y, ratioChannel),
+							  field.get(x, y, opacityChannel), hueShift, false);
+			case MOVE_OUTER_CIRCLE:
+				return grayscale ? 0xFF000000 : 0xFFFFFFFF;
+			case MOVE_INNER_CIRCLE:
+			case BACKGROUND:
+				return grayscale ? 0xFFFFFFFF : 0xFF000000;
+			default:
+				return 0xFF000000;
+		}
+	}
+
+	/**
+	 * Same as getSchemeColor(), with the hue shift given. The hue shift rotates the wheel, the fields stay the same.
+	 *
+	 * @param exact If true, the color is converted exactly as getColor() does, otherwise with the faster HueTable
+	 */
+	private int toArgb(DrawEvent drawEvent, double angle, double distToBorderRatio, double opacity, long hueShift,
+					   boolean exact) {
+		double hue = grayscale ? 0 : angle + hueShift + (drawEvent == DrawEvent.MOUSE_MOVE ? 0 : 30);
+		double saturation = grayscale ? 0 : (inverted ? 1 - distToBorderRatio : distToBorderRatio);
+		double brightness = grayscale ? (inverted ? (1 - ((1 - distToBorderRatio) / 2))
+												  : (1 - distToBorderRatio) / 2) : 1;
+		opacity = drawEvent == DrawEvent.LMOUSE_PRESS ? opacity : 1;
+		return exact ? Argb.hsb(hue, saturation, brightness, opacity)
+					 : HueTable.hsb(hue, saturation, brightness, opacity);
+	}
+
+	/**
+	 * Builds the color fields again if the screen size changed since they were built, which happens when a recording
+	 * is started with a different resolution multiplier.
+	 */
+	private void updateFields() {
+		if (fields != null && fieldWidth == Main.screenWidth && fieldHeight == Main.screenHeight)
+			return;
+
+		double width = Main.screenWidth, height = Main.screenHeight;
+		int centreX = (int) width / 2, centreY = (int) height / 2;
+		double maxStep = Math.max(width, height) / fieldResolution;
+
+		// The angle and the distance to the border jump across the lines through the centre, and take odd values on
+		// the lines themselves, so each quarter of the screen gets its own field, sampled just inside of those lines.
+		// Shapes right on the lines are computed exactly instead.
+		double left = centreX - edgeOffset, right = centreX + edgeOffset;
+		double top = centreY - edgeOffset, bottom = centreY + edgeOffset;
+		ColorField[] fields = {
+				new ColorField(0, 0, centreX, centreY, 3, maxStep, (x, y, values) ->
+						sampleField(Math.min(x, left), Math.min(y, top), centreX, centreY, values)),
+				new ColorField(centreX, 0, width, centreY, 3, maxStep, (x, y, values) ->
+						sampleField(Math.max(x, right), Math.min(y, top), centreX, centreY, values)),
+				new ColorField(0, centreY, centreX, height, 3, maxStep, (x, y, values) ->
+						sampleField(Math.min(x, left), Math.max(y, bottom), centreX, centreY, values)),
+				new ColorField(centreX, centreY, width, height, 3, maxStep, (x, y, values) ->
+						sampleField(Math.max(x, right), Math.max(y, bottom), centreX, centreY, values))
+		};
+
+		this.fields = fields;
+		fieldCentreX = centreX;
+		fieldCentreY = centreY;
+		exactRadius = 4 * maxStep;
+		fieldWidth = width;
+		fieldHeight = height;
+	}
+
+	/**
+	 * Computes the angle from the centre of the screen, the ratio of the distance to the centre and to the border, and
+	 * the opacity of mouse presses, the same way getColor() does. They only depend on the position, and are what make
+	 * getColor() slow.
+	 */
+	private void sampleField(double x, double y, int centreX, int centreY, double[] values) {
+		double angleDeg = Math.toDegrees(Math.atan((centreY - y) / (x - centreX)));
+		if (x < centreX)
+			angleDeg += 180;
+		else if (y > centreY)
+			angleDeg += 360;
+
+		double distFromCentre = Math.sqrt((y - centreY) * (y - centreY) + (x - centreX) * (x - centreX));
+		double distToBorderRatio = distFromCentre / distToBorder(x, y, centreX, centreY);
+		distToBorderRatio = Math.min(Math.max(distToBorderRatio, 0d), 1d);
+
+		values[angleChannel] = angleDeg;
+		values[ratioChannel] = distToBorderRatio;
+		values[opacityChannel] = getOpacity(distFromCentre);
+	}
+
 	/**
 	 * Based on the wheel scheme grayscale and inverted settings, this method returns a color in the using the HSB
 	 * color model. Grayscale schemes will not have any color, as the name implies, and will be black, white and all
@@ -80,7 +206,7 @@ public class WheelScheme implements ColorScheme {
 	 */
 	private Color getSchemeColor(DrawEvent drawEvent, double angle, double distToBorderRatio, double distFromCentre) {
 		return Color.hsb(
-				grayscale ? 0 : ((angle + ((System.currentTimeMillis() - startTime) / 60000)
+				grayscale ? 0 : ((angle + (SessionClock.millis() / 60000)
 								  + (drawEvent == DrawEvent.MOUSE_MOVE ? 0 : 30)) % 360),
 				grayscale ? 0 : (inverted ? 1 - distToBorderRatio : distToBorderRatio),
 				grayscale ? (inverted ? (1 - ((1 - distToBorderRatio) / 2)) : (1 - distToBorderRatio) / 2)
@@ -91,7 +217,7 @@ public class WheelScheme implements ColorScheme {
 
 	@Override
 	public void startColorScheme() {
-		startTime = System.currentTimeMillis();
+		updateFields();
 	}
 
 	@Override
@@ -113,14 +239,15 @@ public class WheelScheme implements ColorScheme {
 	 * Calculates the distance from the centre of the screen to the border of the screen, using the slope of the line
 	 * from the centre of the screen to the mouse position.
 	 *
-	 * @param px          Mouse x coordinate on screen
-	 * @param py          Mouse y coordinate on screen
-	 * @param centrePoint Coordinates of the centre of the screen(s)
+	 * @param px      Mouse x coordinate on screen
+	 * @param py      Mouse y coordinate on screen
+	 * @param centreX X coordinate of the centre of the screen(s)
+	 * @param centreY Y coordinate of the centre of the screen(s)
 	 * @return Distance from the centre of the screen to the border
 	 */
-	private double distToBorder(double px, double py, Point centrePoint) {
-		double dy = py - centrePoint.getY();
-		double dx = centrePoint.getX() - px;
+	private double distToBorder(double px, double py, double centreX, double centreY) {
+		double dy = py - centreY;
+		double dx = centreX - px;
 
 		double slope = dy / dx;
 		double borderX, borderY;
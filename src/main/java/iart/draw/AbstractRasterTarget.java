@@ -0,0 +1,339 @@
+package iart.draw;
+
+/**
+ * Base class for software render targets. It rasterizes the shapes into horizontal spans and single pixels, which the
+ * subclasses blend into however they store their pixels. Coordinates passed to the subclasses are always within the
+ * bounds of the target.
+ */
+public abstract class AbstractRasterTarget implements RenderTarget {
+	protected final int width, height;
+	private final LineQuality lineQuality;
+
+	protected AbstractRasterTarget(int width, int height, LineQuality lineQuality) {
+		this.width = width;
+		this.height = height;
+		this.lineQuality = lineQuality;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns how the lines drawn on this target are rasterized, which is fixed when the target is created, so every
+	 * line of a recording is drawn the same way.
+	 *
+	 * @return Line quality of the target
+	 */
+	public LineQuality getLineQuality() {
+		return lineQuality;
+	}
+
+	/**
+	 * Blends a color into a single pixel, which is within the bounds of the target.
+	 *
+	 * @param x    Pixel x coordinate
+	 * @param y    Pixel y coordinate
+	 * @param argb Color to blend into the pixel
+	 */
+	protected abstract void blendPixel(int x, int y, int argb);
+
+	/**
+	 * Blends a color into a horizontal span of pixels, both ends included, which is within the bounds of the target.
+	 *
+	 * @param y      Row of the span
+	 * @param startX First pixel of the span
+	 * @param endX   Last pixel of the span
+	 * @param argb   Color to blend into the pixels
+	 */
+	protected abstract void blendPixels(int y, int startX, int endX, int argb);
+
+	/**
+	 * How mouse lines are rasterized.
+	 */
+	public enum LineQuality {
+		/**
+		 * Bresenham lines, whole pixels stepped with integer arithmetic only.
+		 */
+		FAST,
+		/**
+		 * Xiaolin Wu lines, anti-aliased by splitting each step between the two pixels nearest to the line.
+		 */
+		SMOOTH
+	}
+
+	@Override
+	public void strokeLine(double x0, double y0, double x1, double y1, int argb) {
+		if (lineQuality == LineQuality.SMOOTH)
+			strokeSmoothLine(x0, y0, x1, y1, argb, true, true);
+		else
+			strokeFastLine(x0, y0, x1, y1, argb, 0);
+	}
+
+	/**
+	 * Draws the lines one after the other, so that the points where they meet are only blended once, and translucent
+	 * lines are not darker there. Fast lines leave out the first pixel of every line but the first, since it is the
+	 * last pixel of the line before it. Smooth lines do the same, and fully cover the last pixel of every line but the
+	 * last, so only the two ends of the polyline are partly covered, as the ends of a single line are.
+	 */
+	@Override
+	public void strokePolyline(double[] xs, double[] ys, int offset, int count, int argb) {
+		if (lineQuality == LineQuality.SMOOTH) {
+			if (count == 1)
+				strokeSmoothLine(xs[offset], ys[offset], xs[offset], ys[offset], argb, true, true);
+			for (int i = offset + 1; i < offset + count; i++)
+				strokeSmoothLine(xs[i - 1], ys[i - 1], xs[i], ys[i], argb, i == offset + 1, i == offset + count - 1);
+		} else {
+			strokeFastLine(xs[offset], ys[offset], xs[offset], ys[offset], argb, 0);
+			for (int i = offset + 1; i < offset + count; i++)
+				strokeFastLine(xs[i - 1], ys[i - 1], xs[i], ys[i], argb, 1);
+		}
+	}
+
+	/**
+	 * Draws a line with Bresenham's algorithm, starting from the given step, so pixels at the start can be left out.
+	 * Positions are rounded down rather than to the nearest pixel, so lines cover the pixels they always have, which
+	 * were found by stepping along the line in floating point.
+	 */
+	private void strokeFastLine(double x0, double y0, double x1, double y1, int argb, int firstStep) {
+		int x = (int) Math.floor(x0), y = (int) Math.floor(y0);
+		int dx = (int) Math.floor(x1) - x, dy = (int) Math.floor(y1) - y;
+		int stepX = dx < 0 ? -1 : 1, stepY = dy < 0 ? -1 : 1;
+		dx = Math.abs(dx);
+		dy = Math.abs(dy);
+		int steps = Math.max(dx, dy);
+
+		/*
+		 * Each step moves one pixel along the longer axis, and dx / steps or dy / steps along the other, which is
+		 * accumulated as an integer error term. Starting the error terms of negative directions at steps - 1 makes
+		 * them round towards negative infinity too.
+		 */
+		int errX = stepX < 0 ? steps - 1 : 0, errY = stepY < 0 ? steps - 1 : 0;
+		for (int step = 0; ; step++) {
+			if (step >= firstStep)
+				blend(x, y, argb);
+			if (step == steps)
+				return;
+			errX += dx;
+			if (errX >= steps) {
+				errX -= steps;
+				x += stepX;
+			}
+			errY += dy;
+			if (errY >= steps) {
+				errY -= steps;
+				y += stepY;
+			}
+		}
+	}
+
+	/**
+	 * Draws an anti-aliased line with Xiaolin Wu's algorithm. Integer coordinates are taken as the centres of pixels,
+	 * as the drawer passes whole pixels on the full resolution target, so horizontal and vertical lines stay one pixel
+	 * wide instead of being spread over two rows or columns.
+	 *
+	 * @param first False if the line continues another one, in which case the pixel it starts at is left out
+	 * @param last  False if another line continues this one, in which case the pixel it ends at is fully covered
+	 */
+	private void strokeSmoothLine(double x0, double y0, double x1, double y1, int argb, boolean first,
+								  boolean last) {
+		boolean steep = Math.abs(y1 - y0) > Math.abs(x1 - x0);
+		if (steep) { // Step along y instead, by swapping the axes, and swapping them back when blending
+			double t = x0;
+			x0 = y0;
+			y0 = t;
+			t = x1;
+			x1 = y1;
+			y1 = t;
+		}
+		boolean reversed = x0 > x1;
+		if (reversed) {
+			double t = x0;
+			x0 = x1;
+			x1 = t;
+			t = y0;
+			y0 = y1;
+			y1 = t;
+		}
+
+		double dx = x1 - x0;
+		if (dx == 0) { // Both points are the same, since the line is not steep
+			if (first)
+				blendCoverage(steep, Math.floor(x0 + 0.5), y0, argb, 1);
+			return;
+		}
+		double gradient = (y1 - y0) / dx;
+
+		/*
+		 * The pixels at the ends of a polyline are covered by the part of the step that lies within the line. Where
+		 * two lines meet, the line ending there covers the pixel fully, and the line starting there leaves it out.
+		 */
+		double startX = Math.floor(x0 + 0.5), endX = Math.floor(x1 + 0.5);
+		double startY = y0 + gradient * (startX - x0), endY = y1 + gradient * (endX - x1);
+		double startCap = 1 - (x0 + 0.5 - startX), endCap = x1 + 0.5 - endX;
+		if (endX == startX) { // Within one pixel, which the line before covered already, if there is one
+			if (first)
+				blendCoverage(steep, startX, startY, argb, last ? startCap : 1);
+			return;
+		}
+		double startCoverage = reversed ? (last ? startCap : 1) : (first ? startCap : 0);
+		double endCoverage = reversed ? (first ? endCap : 0) : (last ? endCap : 1);
+		if (startCoverage > 0)
+			blendCoverage(steep, startX, startY, argb, startCoverage);
+		if (endCoverage > 0)
+			blendCoverage(steep, endX, endY, argb, endCoverage);
+
+		double y = startY + gradient;
+		for (double x = startX + 1; x < endX; x++, y += gradient)
+			blendCoverage(steep, x, y, argb, 1);
+	}
+
+	/**
+	 * Blends one step of a smooth line into the two pixels nearest to it across the line, in proportion to how close
+	 * the line passes to each.
+	 *
+	 * @param steep    True if x runs down the line and y across it, in which case they are swapped
+	 * @param x        Pixel along the line
+	 * @param y        Position of the line across it, in pixels, where whole numbers are pixel centres
+	 * @param argb     Color of the line
+	 * @param coverage Fraction of the step that lies within the line, from 0 to 1
+	 */
+	private void blendCoverage(boolean steep, double x, double y, int argb, double coverage) {
+		double pixelY = Math.floor(y), far = y - pixelY;
+		int alpha = argb >>> 24, rgb = argb & 0xFFFFFF;
+		int nearAlpha = (int) (alpha * coverage * (1 - far) + 0.5), farAlpha = (int) (alpha * coverage * far + 0.5);
+		int along = (int) x, across = (int) pixelY;
+		if (nearAlpha > 0) {
+			if (steep)
+				blend(across, along, nearAlpha << 24 | rgb);
+			else
+				blend(along, across, nearAlpha << 24 | rgb);
+		}
+		if (farAlpha > 0) {
+			if (steep)
+				blend(across + 1, along, farAlpha << 24 | rgb);
+			else
+				blend(along, across + 1, farAlpha << 24 | rgb);
+		}
+	}
+
+	/**
+	 * Circles up to StampCache.maxRadius are blended from a cached stamp, larger ones are rasterized directly.
+	 */
+	@Override
+	public void fillCircle(double cx, double cy, double radius, int argb) {
+		if (radius <= StampCache.maxRadius) {
+			blendCircleStamp(false, cx, cy, radius, argb);
+			return;
+		}
+
+		int minY = Math.max((int) Math.floor(cy - radius), 0);
+		int maxY = Math.min((int) Math.ceil(cy + radius), height - 1);
+
+		// A pixel is inside the circle if its centre is inside it
+		for (int y = minY; y <= maxY; y++) {
+			double dy = y + 0.5 - cy;
+			double halfWidth = radius * radius - dy * dy;
+			if (halfWidth < 0)
+				continue;
+			halfWidth = Math.sqrt(halfWidth);
+			blendSpan(y, (int) Math.ceil(cx - halfWidth - 0.5), (int) Math.floor(cx + halfWidth - 0.5), argb);
+		}
+	}
+
+	/**
+	 * Circles up to StampCache.maxRadius are blended from a cached stamp, larger ones are rasterized directly.
+	 */
+	@Override
+	public void strokeCircle(double cx, double cy, double radius, int argb) {
+		if (radius <= StampCache.maxRadius) {
+			blendCircleStamp(true, cx, cy, radius, argb);
+			return;
+		}
+
+		double outer = radius + 0.5, inner = radius - 0.5;
+		int minY = Math.max((int) Math.floor(cy - outer), 0);
+		int maxY = Math.min((int) Math.ceil(cy + outer), height - 1);
+
+		/*
+		 * A pixel belongs to the outline if its centre is less than half a pixel away from the circle. On each row,
+		 * those pixels form two spans, between the outer and inner edges of the outline.
+		 */
+		for (int y = minY; y <= maxY; y++) {
+			double dy = y + 0.5 - cy;
+			double outerHalf = outer * outer - dy * dy;
+			if (outerHalf < 0)
+				continue;
+			outerHalf = Math.sqrt(outerHalf);
+			int outerStart = (int) Math.ceil(cx - outerHalf - 0.5), outerEnd = (int) Math.floor(cx + outerHalf - 0.5);
+
+			double innerHalf = inner > 0 ? inner * inner - dy * dy : -1;
+			if (innerHalf < 0) {
+				blendSpan(y, outerStart, outerEnd, argb);
+			} else {
+				innerHalf = Math.sqrt(innerHalf);
+				blendSpan(y, outerStart, (int) Math.ceil(cx - innerHalf - 0.5) - 1, argb);
+				blendSpan(y, (int) Math.floor(cx + innerHalf - 0.5) + 1, outerEnd, argb);
+			}
+		}
+	}
+
+	/**
+	 * Blends the stamp of a circle, with its radius and centre rounded to the grid of the stamp cache, positioned so
+	 * that it covers the same pixels as rasterizing the rounded circle would.
+	 */
+	private void blendCircleStamp(boolean outline, double cx, double cy, double radius, int argb) {
+		long stepX = Math.round(cx * StampCache.subpixels), stepY = Math.round(cy * StampCache.subpixels);
+		long pixelX = Math.floorDiv(stepX, StampCache.subpixels), pixelY = Math.floorDiv(stepY, StampCache.subpixels);
+		StampCache.Stamp stamp = StampCache.getCircle(outline, (int) Math.round(radius * StampCache.subpixels),
+													  (int) (stepX - pixelX * StampCache.subpixels),
+													  (int) (stepY - pixelY * StampCache.subpixels));
+		int x = (int) pixelX, y = (int) pixelY + stamp.top;
+		int[] spans = stamp.spans;
+		for (int row = Math.max(-y, 0); row < stamp.rows && y + row < height; row++) {
+			blendSpan(y + row, x + spans[row * 4], x + spans[row * 4 + 1], argb);
+			blendSpan(y + row, x + spans[row * 4 + 2], x + spans[row * 4 + 3], argb);
+		}
+	}
+
+	@Override
+	public void strokeRect(double x, double y, double width, double height, int argb) {
+		int left = (int) Math.floor(x), top = (int) Math.floor(y);
+		int right = (int) Math.floor(x + width), bottom = (int) Math.floor(y + height);
+
+		blendSpan(top, left, right, argb);
+		if (bottom != top)
+			blendSpan(bottom, left, right, argb);
+		for (int row = top + 1; row < bottom; row++) {
+			blend(left, row, argb);
+			if (right != left)
+				blend(right, row, argb);
+		}
+	}
+
+	/**
+	 * Blends a color into a single pixel. Pixels outside the target are ignored.
+	 */
+	protected void blend(int x, int y, int argb) {
+		if (x >= 0 && y >= 0 && x < width && y < height)
+			blendPixel(x, y, argb);
+	}
+
+	/**
+	 * Blends a color into a horizontal span of pixels, both ends included. The span is clipped to the target.
+	 */
+	protected void blendSpan(int y, int startX, int endX, int argb) {
+		if (y < 0 || y >= height)
+			return;
+		startX = Math.max(startX, 0);
+		endX = Math.min(endX, width - 1);
+		if (startX <= endX)
+			blendPixels(y, startX, endX, argb);
+	}
+}
@@ -0,0 +1,137 @@
+package iart.draw;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Helper methods to work with colors packed into 32 bit integers, with 8 bits per channel, in ARGB order (alpha in
+ * the most significant byte). This is the pixel format used by RenderTarget implementations.
+ */
+public final class Argb {
+	private Argb() {
+	}
+
+	/**
+	 * Packs a JavaFX color into an ARGB integer.
+	 *
+	 * @param color Color to convert
+	 * @return ARGB representation of the color
+	 */
+	public static int fromColor(Color color) {
+		return pack((int) Math.round(color.getOpacity() * 255), (int) Math.round(color.getRed() * 255),
+					(int) Math.round(color.getGreen() * 255), (int) Math.round(color.getBlue() * 255));
+	}
+
+	/**
+	 * Packs the four channels of a color into an ARGB integer. All channels must be in the 0-255 range.
+	 *
+	 * @param a Alpha channel
+	 * @param r Red channel
+	 * @param g Green channel
+	 * @param b Blue channel
+	 * @return ARGB representation of the color
+	 */
+	public static int pack(int a, int r, int g, int b) {
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Packs a color given by its channels in the 0-1 range, as JavaFX colors are, rounding each channel to the nearest
+	 * 8 bit value like fromColor() does. Channels outside the range are clamped.
+	 *
+	 * @param opacity Alpha channel
+	 * @param red     Red channel
+	 * @param green   Green channel
+	 * @param blue    Blue channel
+	 * @return ARGB representation of the color
+	 */
+	public static int fromChannels(double opacity, double red, double green, double blue) {
+		return pack(toByte(opacity), toByte(red), toByte(green), toByte(blue));
+	}
+
+	private static int toByte(double channel) {
+		// JavaFX colors hold their channels as floats, rounded the same way so both give the same 8 bit values
+		return (int) Math.round((double) (float) Math.min(Math.max(channel, 0d), 1d) * 255);
+	}
+
+	/**
+	 * Packs a gray, giving the same result as Argb.fromColor(Color.gray(gray, opacity)), without allocating.
+	 *
+	 * @param gray    Brightness of the gray, from 0 (black) to 1 (white)
+	 * @param opacity Opacity, from 0 to 1
+	 * @return ARGB representation of the color
+	 */
+	public static int gray(double gray, double opacity) {
+		return fromChannels(opacity, gray, gray, gray);
+	}
+
+	/**
+	 * Converts a color given in the HSB color model, giving the same result as
+	 * Argb.fromColor(Color.hsb(hue, saturation, brightness, opacity)), without allocating. Unlike Color.hsb(),
+	 * saturation, brightness and opacity outside the 0-1 range are clamped rather than rejected.
+	 *
+	 * @param hue        Hue, in degrees, any value is wrapped around to 0-360
+	 * @param saturation Saturation, from 0 to 1
+	 * @param brightness Brightness, from 0 to 1
+	 * @param opacity    Opacity, from 0 to 1
+	 * @return ARGB representation of the color
+	 */
+	public static int hsb(double hue, double saturation, double brightness, double opacity) {
+		saturation = Math.min(Math.max(saturation, 0d), 1d);
+		brightness = Math.min(Math.max(brightness, 0d), 1d);
+		if (saturation == 0)
+			return fromChannels(opacity, brightness, brightness, brightness);
+
+		// Same steps as JavaFX's conversion, so both round to the same 8 bit values
+		hue = (((hue % 360) + 360) % 360) / 360;
+		double h = (hue - Math.floor(hue)) * 6d;
+		double f = h - Math.floor(h);
+		double p = brightness * (1d - saturation);
+		double q = brightness * (1d - saturation * f);
+		double t = brightness * (1d - saturation * (1d - f));
+		switch ((int) h) {
+			case 0:
+				return fromChannels(opacity, brightness, t, p);
+			case 1:
+				return fromChannels(opacity, q, brightness, p);
+			case 2:
+				return fromChannels(opacity, p, brightness, t);
+			case 3:
+				return fromChannels(opacity, p, q, brightness);
+			case 4:
+				return fromChannels(opacity, t, p, brightness);
+			default:
+				return fromChannels(opacity, brightness, p, q);
+		}
+	}
+
+	/**
+	 * Blends a color on top of another, using the source over rule.
+	 *
+	 * @param dst Color that is being drawn over
+	 * @param src Color being drawn
+	 * @return Resulting color
+	 */
+	public static int blend(int dst, int src) {
+		int sa = src >>> 24;
+		if (sa == 255)
+			return src;
+		if (sa == 0)
+			return dst;
+
+		int da = dst >>> 24;
+		int inv = 255 - sa;
+		if (da == 255) { // Fast path, drawing over an opaque pixel stays opaque
+			return 0xFF000000 |
+				   (((((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * inv) / 255) << 16) |
+				   (((((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * inv) / 255) << 8) |
+				   (((src & 0xFF) * sa + (dst & 0xFF) * inv) / 255);
+		}
+
+		int dw = da * inv / 255; // Weight of the destination color in the result
+		int oa = sa + dw;
+		return (oa << 24) |
+			   (((((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * dw) / oa) << 16) |
+			   (((((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * dw) / oa) << 8) |
+			   (((src & 0xFF) * sa + (dst & 0xFF) * dw) / oa);
+	}
+}
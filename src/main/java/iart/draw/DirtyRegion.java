@@ -0,0 +1,80 @@
+package iart.draw;
+
+/**
+ * Rectangle that grows to contain all areas of a render target that have been drawn on since it was last cleared.
+ * Used to only refresh the parts of the preview that have changed. Coordinates are in pixels, the minimum edges are
+ * inclusive and the maximum edges exclusive.
+ */
+public class DirtyRegion {
+	private int minX, minY, maxX, maxY;
+
+	/**
+	 * Creates an empty region.
+	 */
+	public DirtyRegion() {
+		clear();
+	}
+
+	/**
+	 * Grows the region so that it contains the given rectangle.
+	 *
+	 * @param x0 Left edge of the rectangle
+	 * @param y0 Top edge of the rectangle
+	 * @param x1 Right edge of the rectangle
+	 * @param y1 Bottom edge of the rectangle
+	 */
+	public void add(double x0, double y0, double x1, double y1) {
+		minX = Math.min(minX, (int) Math.floor(Math.min(x0, x1)));
+		minY = Math.min(minY, (int) Math.floor(Math.min(y0, y1)));
+		maxX = Math.max(maxX, (int) Math.ceil(Math.max(x0, x1)));
+		maxY = Math.max(maxY, (int) Math.ceil(Math.max(y0, y1)));
+	}
+
+	/**
+	 * Grows the region so that it contains the whole of an area of the given size.
+	 *
+	 * @param width  Width of the area
+	 * @param height Height of the area
+	 */
+	public void addAll(int width, int height) {
+		add(0, 0, width, height);
+	}
+
+	/**
+	 * Grows the region so that it contains another region.
+	 *
+	 * @param region Region to merge into this one
+	 */
+	public void add(DirtyRegion region) {
+		if (!region.isEmpty())
+			add(region.minX, region.minY, region.maxX, region.maxY);
+	}
+
+	/**
+	 * Empties the region.
+	 */
+	public void clear() {
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = Integer.MIN_VALUE;
+	}
+
+	public boolean isEmpty() {
+		return minX >= maxX || minY >= maxY;
+	}
+
+	public int getMinX() {
+		return minX;
+	}
+
+	public int getMinY() {
+		return minY;
+	}
+
+	public int getMaxX() {
+		return maxX;
+	}
+
+	public int getMaxY() {
+		return maxY;
+	}
+}
@@ -0,0 +1,184 @@
+package iart.draw;
+
+import java.util.Arrays;
+
+/**
+ * Render target that records the shapes drawn on it, with their colors, instead of rasterizing them. The shapes can
+ * then be drawn on other targets, in part or in full, and in any order. Drawing a session through a Drawer onto a
+ * display list fixes the geometry and colors of every shape, which depend on the order the events happened in, so
+ * the rasterization can afterwards be split up between threads.
+ * <p>
+ * Shapes are stored in growable primitive arrays, along with the bounds of the pixels each of them can touch. The points
+ * of polylines are kept in arrays of their own, and are drawn with a single strokePolyline() call, so the points where
+ * their lines meet are blended the same way as on the target the list stands in for.
+ */
+public class DisplayList implements RenderTarget {
+	private static final byte LINE = 0, FILL_CIRCLE = 1, STROKE_CIRCLE = 2, STROKE_RECT = 3, POLYLINE = 4;
+
+	private final int width, height;
+	private int background;
+
+	private int size;
+	private byte[] ops = new byte[1024];
+	private int[] colors = new int[1024];
+	private double[] args = new double[1024 * 4];
+	private int[] bounds = new int[1024 * 4]; // Min x, min y, max x, max y of each shape, all inclusive
+
+	private int points; // Points of all polylines, each polyline's args hold the index of its first point and count
+	private double[] pointsX = new double[1024], pointsY = new double[1024];
+
+	/**
+	 * Creates an empty display list, for a target of the given size.
+	 *
+	 * @param width  Width of the target the shapes are drawn for, in pixels
+	 * @param height Height of the target the shapes are drawn for, in pixels
+	 */
+	public DisplayList(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Removes all shapes, and sets the color the target they are drawn on should be filled with first.
+	 *
+	 * @param argb Background color
+	 */
+	@Override
+	public void fill(int argb) {
+		background = argb;
+		size = 0;
+		points = 0;
+	}
+
+	public int getBackground() {
+		return background;
+	}
+
+	/**
+	 * Returns the number of shapes recorded.
+	 *
+	 * @return Number of shapes
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void strokeLine(double x0, double y0, double x1, double y1, int argb) {
+		add(LINE, x0, y0, x1, y1, argb, Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+	}
+
+	@Override
+	public void strokePolyline(double[] xs, double[] ys, int offset, int count, int argb) {
+		if (points + count > pointsX.length) {
+			int capacity = Math.max(pointsX.length * 2, points + count);
+			pointsX = Arrays.copyOf(pointsX, capacity);
+			pointsY = Arrays.copyOf(pointsY, capacity);
+		}
+		System.arraycopy(xs, offset, pointsX, points, count);
+		System.arraycopy(ys, offset, pointsY, points, count);
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = offset; i < offset + count; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		add(POLYLINE, points, count, 0, 0, argb, minX, minY, maxX, maxY);
+		points += count;
+	}
+
+	@Override
+	public void fillCircle(double cx, double cy, double radius, int argb) {
+		add(FILL_CIRCLE, cx, cy, radius, 0, argb, cx - radius, cy - radius, cx + radius, cy + radius);
+	}
+
+	@Override
+	public void strokeCircle(double cx, double cy, double radius, int argb) {
+		double outer = radius + 0.5;
+		add(STROKE_CIRCLE, cx, cy, radius, 0, argb, cx - outer, cy - outer, cx + outer, cy + outer);
+	}
+
+	@Override
+	public void strokeRect(double x, double y, double width, double height, int argb) {
+		add(STROKE_RECT, x, y, width, height, argb, x, y, x + width, y + height);
+	}
+
+	private void add(byte op, double a, double b, double c, double d, int argb, double minX, double minY,
+					 double maxX, double maxY) {
+		if (size == ops.length) {
+			ops = Arrays.copyOf(ops, size * 2);
+			colors = Arrays.copyOf(colors, size * 2);
+			args = Arrays.copyOf(args, size * 8);
+			bounds = Arrays.copyOf(bounds, size * 8);
+		}
+
+		ops[size] = op;
+		colors[size] = argb;
+		int i = size * 4;
+		args[i] = a;
+		args[i + 1] = b;
+		args[i + 2] = c;
+		args[i + 3] = d;
+		// One pixel of margin on each side, so rounding in the rasterizer never reaches outside the bounds
+		bounds[i] = (int) Math.floor(minX) - 1;
+		bounds[i + 1] = (int) Math.floor(minY) - 1;
+		bounds[i + 2] = (int) Math.ceil(maxX) + 1;
+		bounds[i + 3] = (int) Math.ceil(maxY) + 1;
+		size++;
+	}
+
+	public int getMinX(int index) {
+		return bounds[index * 4];
+	}
+
+	public int getMinY(int index) {
+		return bounds[index * 4 + 1];
+	}
+
+	public int getMaxX(int index) {
+		return bounds[index * 4 + 2];
+	}
+
+	public int getMaxY(int index) {
+		return bounds[index * 4 + 3];
+	}
+
+	/**
+	 * Draws one of the recorded shapes on a render target.
+	 *
+	 * @param index  Index of the shape, in the order the shapes were recorded in
+	 * @param target RenderTarget on which to draw the shape
+	 */
+	public void draw(int index, RenderTarget target) {
+		int i = index * 4;
+		switch (ops[index]) {
+			case LINE:
+				target.strokeLine(args[i], args[i + 1], args[i + 2], args[i + 3], colors[index]);
+				break;
+			case FILL_CIRCLE:
+				target.fillCircle(args[i], args[i + 1], args[i + 2], colors[index]);
+				break;
+			case STROKE_CIRCLE:
+				target.strokeCircle(args[i], args[i + 1], args[i + 2], colors[index]);
+				break;
+			case STROKE_RECT:
+				target.strokeRect(args[i], args[i + 1], args[i + 2], args[i + 3], colors[index]);
+				break;
+			case POLYLINE:
+				target.strokePolyline(pointsX, pointsY, (int) args[i], (int) args[i + 1], colors[index]);
+				break;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package iart.draw;
+
+import iart.metrics.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free buffer of draw commands. The listener threads write commands into it as input events arrive,
+ * and the render thread drains all pending commands in one go, every few milliseconds, instead of each event posting
+ * its own runnable to the JavaFX application thread.
+ * <p>
+ * Commands are stored in preallocated primitive arrays, so no objects are allocated per command, and the memory used
+ * does not grow however far behind the renderer falls. Each command is a DrawEvent and up to four numbers, whose
+ * meaning depends on the event (see the Drawer class).
+ * <p>
+ * Mouse move lines and the rest of shapes are kept in separate lanes, so the flood of lines a fast mouse produces
+ * can not take up the room of the keystrokes and clicks. Each lane is a ring buffer in which each slot has a sequence
+ * number, which tells producers and consumers whether the slot is free to be written or ready to be read, so any
+ * number of threads can add commands at the same time. Once a command has claimed its slot, it is stamped with the
+ * number of commands the other lane has claimed by then. The lanes are merged by those stamps, which tell whether the
+ * head of one lane was added before the head of the other, and the merge stops at a command that has been claimed but
+ * not written yet, so commands are drawn in the order in which they were added. When the lines lane is full, what
+ * happens depends on its OverflowPolicy. When the shapes lane is full, new shapes are dropped.
+ * <p>
+ * Commands can be added from any number of threads, but only one thread may drain the buffer.
+ * <p>
+ * If metrics are enabled, each command also keeps the time its input event was received, so the time it spends
+ * waiting in the buffer, and until it is drawn, can be measured.
+ */
+public class DrawCommandBuffer {
+	/**
+	 * What to do with a new line when the lines lane is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Drop the new line, keeping the ones already waiting.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Merge the new line into the newest line waiting, if it continues it and no other shape has been added since,
+		 * so the mouse path keeps going where the pointer goes, only with less detail. Otherwise, drop it.
+		 */
+		MERGE
+	}
+
+	private static final DrawEvent[] events = DrawEvent.values();
+
+	private final Lane lines, shapes;
+	private final OverflowPolicy linePolicy;
+	private long oldestDrained; // Time the oldest input event drained by the last call to drain was received
+
+	/**
+	 * Allocates a buffer that can hold the given number of lines, and a quarter as many other shapes. When the lines
+	 * lane is full, new lines are merged into the newest pending line.
+	 *
+	 * @param capacity Maximum number of pending lines, rounded up to a power of two
+	 */
+	public DrawCommandBuffer(int capacity) {
+		this(capacity, capacity / 4, OverflowPolicy.MERGE);
+	}
+
+	/**
+	 * Allocates a buffer with the given capacity for each lane.
+	 *
+	 * @param lineCapacity  Maximum number of pending mouse move lines, rounded up to a power of two
+	 * @param shapeCapacity Maximum number of pending shapes of other kinds, rounded up to a power of two
+	 * @param linePolicy    What to do with new lines when there is no room for them
+	 */
+	public DrawCommandBuffer(int lineCapacity, int shapeCapacity, OverflowPolicy linePolicy) {
+		lines = new Lane(lineCapacity);
+		shapes = new Lane(shapeCapacity);
+		lines.other = shapes;
+		shapes.other = lines;
+		this.linePolicy = linePolicy;
+	}
+
+	/**
+	 * Adds a command to the buffer. Safe to call from any thread.
+	 *
+	 * @param drawEvent Shape to be drawn
+	 * @param a         First argument of the command
+	 * @param b         Second argument of the command
+	 * @param c         Third argument of the command
+	 * @param d         Fourth argument of the command
+	 * @return True if the command was added, or merged into a line, false if its lane was full and it was dropped
+	 */
+	public boolean offer(DrawEvent drawEvent, double a, double b, double c, double d) {
+		return offer(drawEvent, a, b, c, d, 0);
+	}
+
+	/**
+	 * Adds a command to the buffer, along with the time the input event that produced it was received. Safe to call
+	 * from any thread.
+	 *
+	 * @param drawEvent Shape to be drawn
+	 * @param a         First argument of the command
+	 * @param b         Second argument of the command
+	 * @param c         Third argument of the command
+	 * @param d         Fourth argument of the command
+	 * @param received  Time the input event was received, from Metrics.now(), or 0 if unknown
+	 * @return True if the command was added, or merged into a line, false if its lane was full and it was dropped
+	 */
+	public boolean offer(DrawEvent drawEvent, double a, double b, double c, double d, long received) {
+		if (drawEvent != DrawEvent.MOUSE_MOVE) {
+			if (shapes.offer(drawEvent.ordinal(), a, b, c, d, received))
+				return enqueued(received);
+			shapes.dropped.incrementAndGet();
+			return false;
+		}
+
+		while (!lines.offer(drawEvent.ordinal(), a, b, c, d, received)) {
+			if (linePolicy == OverflowPolicy.MERGE) {
+				int merged = lines.mergeIntoNewest(a, b, c, d);
+				if (merged > 0) {
+					lines.merged.incrementAndGet();
+					return enqueued(received);
+				}
+				if (merged < 0) // The newest line was being written or drawn, there may be room now
+					continue;
+			}
+			lines.dropped.incrementAndGet();
+			return false;
+		}
+		return enqueued(received);
+	}
+
+	private static boolean enqueued(long received) {
+		if (Metrics.enabled && received != 0)
+			Metrics.enqueueLatency.record(System.nanoTime() - received);
+		return true;
+	}
+
+	/**
+	 * Executes all commands that are in the buffer when this method is called, in the order in which they were
+	 * added. Commands added while draining are left for the next call, so a busy producer can not keep the renderer
+	 * stuck in here. Stops early at a command that has been claimed but not written yet, if the commands after it may
+	 * have been added later, so they are left for the next call too.
+	 *
+	 * @param drawer Drawer with which to execute the commands
+	 * @return Number of commands executed
+	 */
+	public int drain(Drawer drawer) {
+		long lineEnd = lines.enqueuePos.get(), shapeEnd = shapes.enqueuePos.get();
+		int drained = 0;
+		long drainStart = Metrics.now();
+		oldestDrained = 0;
+
+		while (true) {
+			long linePos = lines.dequeuePos.get(), shapePos = shapes.dequeuePos.get();
+			boolean lineReady = linePos < lineEnd && lines.isWritten(linePos);
+			boolean shapeReady = shapePos < shapeEnd && shapes.isWritten(shapePos);
+
+			// A head goes first if every command the other lane had claimed when it was stamped has been drawn
+			Lane lane;
+			long pos;
+			if (lineReady && lines.stampAt(linePos) <= shapePos) {
+				lane = lines;
+				pos = linePos;
+			} else if (shapeReady && shapes.stampAt(shapePos) <= linePos) {
+				lane = shapes;
+				pos = shapePos;
+			} else if (lineReady && shapeReady) { // Each was added while the other was being added, either can go first
+				lane = lines;
+				pos = linePos;
+			} else { // Nothing left, or the next command has been claimed, but not written yet
+				break;
+			}
+
+			if (!lane.take(pos)) // A producer is merging a line into it, leave it for the next call
+				break;
+			int index = (int) pos & lane.mask;
+			DrawEvent drawEvent = events[lane.types[index]];
+			double a = lane.args[index * 4], b = lane.args[index * 4 + 1];
+			double c = lane.args[index * 4 + 2], d = lane.args[index * 4 + 3];
+			long received = Metrics.enabled ? lane.received[index] : 0;
+			lane.release(pos);
+
+			if (Metrics.enabled && received != 0) {
+				Metrics.queueLatency.record(drainStart - received);
+				if (oldestDrained == 0 || received < oldestDrained)
+					oldestDrained = received;
+			}
+
+			drawer.draw(drawEvent, a, b, c, d);
+			drained++;
+		}
+
+		return drained;
+	}
+
+	/**
+	 * Returns the time the oldest input event among the commands executed by the last call to drain was received.
+	 * Only known when metrics are enabled.
+	 *
+	 * @return Time from Metrics.now(), or 0 if unknown
+	 */
+	public long getOldestDrained() {
+		return oldestDrained;
+	}
+
+	/**
+	 * Returns the number of commands waiting to be drawn.
+	 *
+	 * @return Number of pending commands
+	 */
+	public int size() {
+		return getLineDepth() + getShapeDepth();
+	}
+
+	/**
+	 * Returns the number of mouse move lines waiting to be drawn.
+	 *
+	 * @return Number of pending lines
+	 */
+	public int getLineDepth() {
+		return lines.size();
+	}
+
+	/**
+	 * Returns the number of shapes other than lines waiting to be drawn.
+	 *
+	 * @return Number of pending shapes
+	 */
+	public int getShapeDepth() {
+		return shapes.size();
+	}
+
+	/**
+	 * Returns the total number of commands that have been added to the buffer, not counting lines that were merged
+	 * into a line already waiting.
+	 *
+	 * @return Number of commands enqueued since the buffer was created
+	 */
+	public long getEnqueued() {
+		return lines.enqueuePos.get() + shapes.enqueuePos.get();
+	}
+
+	/**
+	 * Returns the total number of commands that have been executed.
+	 *
+	 * @return Number of commands drained since the buffer was created
+	 */
+	public long getDrained() {
+		return lines.dequeuePos.get() + shapes.dequeuePos.get();
+	}
+
+	/**
+	 * Returns the total number of commands that were dropped because their lane was full.
+	 *
+	 * @return Number of commands dropped since the buffer was created
+	 */
+	public long getDropped() {
+		return getDroppedLines() + getDroppedShapes();
+	}
+
+	/**
+	 * Returns the number of mouse move lines that were dropped because the lines lane was full, and they could not be
+	 * merged into the newest line waiting.
+	 *
+	 * @return Number of lines dropped since the buffer was created
+	 */
+	public long getDroppedLines() {
+		return lines.dropped.get();
+	}
+
+	/**
+	 * Returns the number of mouse move lines that were merged into the newest line waiting because the lines lane was
+	 * full.
+	 *
+	 * @return Number of lines merged since the buffer was created
+	 */
+	public long getMergedLines() {
+		return lines.merged.get();
+	}
+
+	/**
+	 * Returns the number of shapes other than lines that were dropped.
+	 *
+	 * @return Number of shapes dropped since the buffer was created
+	 */
+	public long getDroppedShapes() {
+		return shapes.dropped.get();
+	}
+
+	/**
+	 * Ring buffer holding the commands of one lane. The sequence number of a slot is its position while it is free,
+	 * its position + 1 once a command has been written to it, and minus that while the command is being read, or
+	 * a line merged into it.
+	 */
+	private static final class Lane {
+		private final int mask;
+		private final AtomicLongArray sequences;
+		private final long[] stamps, received; // Times are only kept when metrics are enabled
+		private final int[] types;
+		private final double[] args;
+		private Lane other;
+
+		private final AtomicLong enqueuePos = new AtomicLong(), dequeuePos = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong(), merged = new AtomicLong();
+
+		private Lane(int capacity) {
+			int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+			mask = size - 1;
+
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++)
+				sequences.set(i, i);
+			stamps = new long[size];
+			received = Metrics.enabled ? new long[size] : null;
+			types = new int[size];
+			args = new double[size * 4];
+		}
+
+		/**
+		 * Adds a command, if there is room for it.
+		 */
+		private boolean offer(int type, double a, double b, double c, double d, long time) {
+			long pos = enqueuePos.get();
+			while (true) {
+				int index = (int) pos & mask;
+				long diff = sequences.get(index) - pos;
+				if (diff == 0) {
+					if (enqueuePos.compareAndSet(pos, pos + 1)) {
+						// Stamped after claiming the slot, so every command of the other lane claimed before is counted
+						stamps[index] = other.enqueuePos.get();
+						types[index] = type;
+						args[index * 4] = a;
+						args[index * 4 + 1] = b;
+						args[index * 4 + 2] = c;
+						args[index * 4 + 3] = d;
+						if (Metrics.enabled)
+							received[index] = time;
+						sequences.lazySet(index, pos + 1); // Publishes the command
+						return true;
+					}
+					pos = enqueuePos.get();
+				} else if (diff < 0) { // Slot still holds a command from the previous lap, lane is full
+					return false;
+				} else {
+					pos = enqueuePos.get();
+				}
+			}
+		}
+
+		/**
+		 * Extends the newest line waiting to the end of a new line, if the new line starts where it ends, and the
+		 * other lane has not claimed any command since it was added, so nothing drawn after it is drawn before.
+		 *
+		 * @return 1 if the line was merged, 0 if it can not be, or -1 if the newest line was being written or read
+		 */
+		private int mergeIntoNewest(double a, double b, double c, double d) {
+			long pos = enqueuePos.get() - 1;
+			int index = (int) pos & mask;
+			if (pos < 0 || !sequences.compareAndSet(index, pos + 1, -(pos + 1)))
+				return -1;
+
+			int merged = 0;
+			if (enqueuePos.get() == pos + 1 && other.enqueuePos.get() == stamps[index] &&
+				args[index * 4 + 2] == a && args[index * 4 + 3] == b) {
+				args[index * 4 + 2] = c;
+				args[index * 4 + 3] = d;
+				merged = 1;
+			}
+			sequences.set(index, pos + 1);
+			return merged;
+		}
+
+		/**
+		 * Returns whether the command at the given position has been written, and is not having a line merged into it.
+		 */
+		private boolean isWritten(long pos) {
+			return sequences.get((int) pos & mask) == pos + 1;
+		}
+
+		private long stampAt(long pos) {
+			return stamps[(int) pos & mask];
+		}
+
+		/**
+		 * Takes the command at the head of the lane, so its slot can be read until it is released.
+		 *
+		 * @return False if a producer is merging a line into it
+		 */
+		private boolean take(long pos) {
+			return sequences.compareAndSet((int) pos & mask, pos + 1, -(pos + 1));
+		}
+
+		/**
+		 * Frees the slot of a taken command for the next lap.
+		 */
+		private void release(long pos) {
+			dequeuePos.lazySet(pos + 1);
+			sequences.lazySet((int) pos & mask, pos + mask + 1);
+		}
+
+		private int size() {
+			return (int) Math.max(enqueuePos.get() - dequeuePos.get(), 0);
+		}
+	}
+}
@@ -1,96 +1,328 @@
 package iart.draw;
 
-import iart.Main;
+import iart.metrics.Metrics;
 import iart.recorder.Recorder;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.shape.ArcType;
 
-import java.awt.Point;
-import java.awt.geom.Point2D;
+import java.util.Arrays;
 
 /**
- * Draws objects to the canvas as required by the listener classes. Once the drawing has been performed, the preview
- * may be updated to reflect the latest draw operations.
+ * Draws objects to the render target as required by the listener classes. The listeners do not call this class
+ * directly, they add commands to a DrawCommandBuffer, which the render thread drains into this class. Coordinates
+ * are given in screen pixels, and scaled by the resolution multiplier before drawing.
+ * <p>
+ * Every shape is drawn twice, once on the full resolution target, and once on a preview sized target, if there is
+ * one. This way the preview can be shown as is, and costs the same regardless of the resolution multiplier.
+ * <p>
+ * Mouse movements are not drawn line by line. Lines that continue the previous one are collected into a path, which is
+ * simplified and drawn as a polyline when it is flushed, which happens when another shape is drawn, when flush() is
+ * called, after each drain, or when the path gets too long. Mice that report their position a thousand times a second
+ * produce many lines only a pixel or two long, most of which can be left out.
  */
 public class Drawer {
-	private Main main;
+	private static final int maxPathLength = 1 << 12; // Points in the path before it is flushed
 
-	private GraphicsContext gc;
-	private Point2D point = new Point2D.Double();
+	private RenderTarget target;
+
+	private RenderTarget preview;
+	private double previewScaleX, previewScaleY; // Conversion from target pixels to preview pixels
+
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+
+	// Mouse path waiting to be drawn, in target pixels, and scratch arrays used to simplify and draw it
+	private int pathLength;
+	private double[] pathX = new double[64], pathY = new double[64];
+	private double[] previewX = new double[64], previewY = new double[64];
+	private int[] pathColors = new int[64], stack = new int[128];
+	private boolean[] keep = new boolean[64];
+	private DrawEvent[] pathEvents = new DrawEvent[64];
+
+	private long linesQueued, polylinesDrawn;
+
+	/**
+	 * Sets up the drawer to be able to draw on the specified render target.
+	 *
+	 * @param target RenderTarget on which to draw
+	 */
+	public Drawer(RenderTarget target) {
+		this.target = target;
+	}
 
 	/**
-	 * Sets up the drawer to be able to draw on the specified canvas.
+	 * Sets the target on which the preview of the art is drawn. It should be a scaled down copy of the full
+	 * resolution target when it is set, from then on all shapes will be drawn on both targets.
 	 *
-	 * @param main Main class that instantiated this class
-	 * @param gc   GraphicsContext of the canvas on which to draw
+	 * @param preview RenderTarget holding the preview, or null to stop drawing the preview
+	 */
+	public void setPreviewTarget(RenderTarget preview) {
+		this.preview = preview;
+		if (preview != null) {
+			previewScaleX = preview.getWidth() / (double) target.getWidth();
+			previewScaleY = preview.getHeight() / (double) target.getHeight();
+		}
+	}
+
+	public RenderTarget getPreviewTarget() {
+		return preview;
+	}
+
+	/**
+	 * Returns the region of the preview target that has been drawn on since the region was last cleared. The caller
+	 * is responsible for clearing it once it has processed the changes.
+	 *
+	 * @return Region of the preview target drawn on, in preview target pixels
+	 */
+	public DirtyRegion getDirtyRegion() {
+		return dirtyRegion;
+	}
+
+	/**
+	 * Executes a command taken from a DrawCommandBuffer. The arguments are interpreted as follows:
+	 * MOUSE_MOVE draws a line from (a, b) to (c, d), KEYSTROKE draws a square with its top left corner at (a, b) and
+	 * sides c wide, and the rest of events draw a circle centred at (a, b) with radius c.
+	 *
+	 * @param drawEvent Shape to be drawn
+	 * @param a         First argument of the command
+	 * @param b         Second argument of the command
+	 * @param c         Third argument of the command
+	 * @param d         Fourth argument of the command
+	 */
+	public void draw(DrawEvent drawEvent, double a, double b, double c, double d) {
+		switch (drawEvent) {
+			case MOUSE_MOVE:
+				drawLine(a, b, c, d);
+				break;
+			case KEYSTROKE:
+				drawSquare(a, b, c);
+				break;
+			default:
+				drawCircle(drawEvent, a, b, c);
+		}
+	}
+
+	/**
+	 * Draws a line on the render target. If the line starts where the mouse path ends, it is added to the path, which
+	 * is drawn when it is flushed, otherwise the path is flushed and a new one is started with the line.
+	 *
+	 * @param startX Line start x coordinate
+	 * @param startY Line start y coordinate
+	 * @param endX   Line end x coordinate
+	 * @param endY   Line end y coordinate
+	 */
+	public void drawLine(double startX, double startY, double endX, double endY) {
+		startX = (int) (startX * Recorder.resMultiplier);
+		startY = (int) (startY * Recorder.resMultiplier);
+		endX = (int) (endX * Recorder.resMultiplier);
+		endY = (int) (endY * Recorder.resMultiplier);
+
+		linesQueued++;
+		Metrics.mouseLine();
+		if (pathLength == 0 || startX != pathX[pathLength - 1] || startY != pathY[pathLength - 1] ||
+			pathLength == maxPathLength) {
+			flush();
+			addPathPoint(startX, startY);
+		}
+		addPathPoint(endX, endY);
+	}
+
+	private void addPathPoint(double x, double y) {
+		if (pathLength == pathX.length) {
+			int capacity = pathLength * 2;
+			pathX = Arrays.copyOf(pathX, capacity);
+			pathY = Arrays.copyOf(pathY, capacity);
+			previewX = new double[capacity];
+			previewY = new double[capacity];
+			pathColors = new int[capacity];
+			stack = new int[capacity * 2];
+			keep = new boolean[capacity];
+			pathEvents = new DrawEvent[capacity];
+		}
+		pathX[pathLength] = x;
+		pathY[pathLength++] = y;
+	}
+
+	/**
+	 * Draws the mouse path collected so far. The path is first simplified, and then drawn as a polyline, or as several
+	 * if the color scheme gives different colors to different parts of it. Each line of the simplified path takes the
+	 * color of the point it starts at, as lines always have.
 	 */
-	public Drawer(Main main, GraphicsContext gc) {
-		this.main = main;
-		this.gc = gc;
+	public void flush() {
+		if (pathLength == 0)
+			return;
+
+		int points = simplifyPath(Recorder.pathTolerance);
+		int lines = points - 1; // The path always has at least two points
+		Arrays.fill(pathEvents, 0, lines, DrawEvent.MOUSE_MOVE);
+		Recorder.colorScheme.getArgb(pathEvents, pathX, pathY, pathColors, lines);
+
+		int start = 0;
+		for (int i = 1; i < lines; i++) {
+			if (pathColors[i] != pathColors[start]) {
+				strokePath(start, i, pathColors[start]);
+				start = i;
+			}
+		}
+		strokePath(start, points - 1, pathColors[start]);
+		pathLength = 0;
 	}
 
-	private void scaleDrawPoints(Point... ps) {
-		for (Point p : ps) {
-			p.x *= Recorder.resMultiplier;
-			p.y *= Recorder.resMultiplier;
+	/**
+	 * Draws part of the simplified path, from one point to another, both included, on the target and the preview.
+	 */
+	private void strokePath(int from, int to, int argb) {
+		target.strokePolyline(pathX, pathY, from, to - from + 1, argb);
+		polylinesDrawn++;
+		Metrics.drawCall();
+		Metrics.mousePolyline();
+
+		if (preview != null) {
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = from; i <= to; i++) {
+				previewX[i] = pathX[i] * previewScaleX;
+				previewY[i] = pathY[i] * previewScaleY;
+				minX = Math.min(minX, previewX[i]);
+				minY = Math.min(minY, previewY[i]);
+				maxX = Math.max(maxX, previewX[i]);
+				maxY = Math.max(maxY, previewY[i]);
+			}
+			preview.strokePolyline(previewX, previewY, from, to - from + 1, argb);
+			// Smooth lines also cover the pixels next to the ones the points are in
+			dirtyRegion.add(minX - 1, minY - 1, maxX + 2, maxY + 2);
 		}
 	}
 
 	/**
-	 * Draws a line on the canvas.
+	 * Simplifies the mouse path with the Ramer-Douglas-Peucker algorithm. Between the first and last points, the
+	 * point farthest from the line joining them is kept if it is farther than the tolerance, and both halves are
+	 * simplified the same way, otherwise all points in between are left out. The points kept are moved to the start
+	 * of the path arrays.
 	 *
-	 * @param start Line start coordinate
-	 * @param end   Line end coordinate
+	 * @param tolerance Largest distance from the simplified path to a point left out, in target pixels
+	 * @return Number of points kept
 	 */
-	public void drawLine(Point start, Point end) {
-		scaleDrawPoints(start, end);
+	private int simplifyPath(double tolerance) {
+		int last = pathLength - 1;
+		if (last < 2)
+			return pathLength;
 
-		point.setLocation(start);
+		Arrays.fill(keep, 0, pathLength, false);
+		keep[0] = keep[last] = true;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = last;
+		while (top > 0) {
+			int end = stack[--top], start = stack[--top];
+			double dx = pathX[end] - pathX[start], dy = pathY[end] - pathY[start];
+			double length = Math.sqrt(dx * dx + dy * dy);
 
-		gc.setStroke(Recorder.colorScheme.getColor(DrawEvent.MOUSE_MOVE, point));
-		gc.setLineWidth(1);
-		gc.strokeLine(start.x, start.y, end.x, end.y);
-		main.refreshPreview();
+			int farthest = -1;
+			double farthestDist = tolerance;
+			for (int i = start + 1; i < end; i++) {
+				double px = pathX[i] - pathX[start], py = pathY[i] - pathY[start];
+				// Distance to the line, or to the start point if the path came back to where it started
+				double dist = length > 0 ? Math.abs(dx * py - dy * px) / length : Math.sqrt(px * px + py * py);
+				if (dist > farthestDist) {
+					farthest = i;
+					farthestDist = dist;
+				}
+			}
+
+			if (farthest >= 0) {
+				keep[farthest] = true;
+				stack[top++] = start;
+				stack[top++] = farthest;
+				stack[top++] = farthest;
+				stack[top++] = end;
+			}
+		}
+
+		int kept = 0;
+		for (int i = 0; i <= last; i++) {
+			if (keep[i]) {
+				pathX[kept] = pathX[i];
+				pathY[kept++] = pathY[i];
+			}
+		}
+		return kept;
 	}
 
 	/**
-	 * Draws a circle on the canvas.
+	 * Returns the number of lines drawn with drawLine(), before the mouse path is simplified.
+	 *
+	 * @return Number of lines drawn since the drawer was created
+	 */
+	public long getLinesQueued() {
+		return linesQueued;
+	}
+
+	/**
+	 * Returns the number of polylines the mouse path has been drawn with, each a single draw call on the target.
+	 *
+	 * @return Number of polylines drawn since the drawer was created
+	 */
+	public long getPolylinesDrawn() {
+		return polylinesDrawn;
+	}
+
+	/**
+	 * Draws a circle on the render target.
 	 *
 	 * @param drawEvent Determinant of color through use of color palette, depending on the figure being drawn
-	 * @param center    Coordinate on canvas which will be the circles centre
+	 * @param centerX   X coordinate on canvas which will be the circles centre
+	 * @param centerY   Y coordinate on canvas which will be the circles centre
 	 * @param radius    Radius of the circle
 	 */
-	public void drawCircle(DrawEvent drawEvent, Point center, double radius) {
-		scaleDrawPoints(center);
-		radius *= Recorder.resMultiplier;
-
-		point.setLocation(center);
-
-		if (drawEvent == DrawEvent.MOVE_OUTER_CIRCLE) {
-			gc.setStroke(Recorder.colorScheme.getColor(drawEvent, point));
-			gc.strokeArc(center.x - radius / 2d, center.y - radius / 2d, radius, radius, 0, 360, ArcType.OPEN);
-		} else {
-			gc.setFill(Recorder.colorScheme.getColor(drawEvent, point));
-			gc.fillArc(center.x - radius / 2d, center.y - radius / 2d, radius, radius, 0, 360, ArcType.ROUND);
+	public void drawCircle(DrawEvent drawEvent, double centerX, double centerY, double radius) {
+		flush();
+		centerX = (int) (centerX * Recorder.resMultiplier);
+		centerY = (int) (centerY * Recorder.resMultiplier);
+
+		// The radius has always been used as the diameter of the circle, kept as is so images look the same
+		radius *= Recorder.resMultiplier / 2d;
+
+		int argb = Recorder.colorScheme.getArgb(drawEvent, centerX, centerY);
+		drawCircle(target, drawEvent, centerX, centerY, radius, argb);
+		Metrics.drawCall();
+
+		if (preview != null) {
+			centerX *= previewScaleX;
+			centerY *= previewScaleY;
+			radius *= (previewScaleX + previewScaleY) / 2d;
+			drawCircle(preview, drawEvent, centerX, centerY, radius, argb);
+			dirtyRegion.add(centerX - radius - 1, centerY - radius - 1, centerX + radius + 1, centerY + radius + 1);
 		}
+	}
 
-		main.refreshPreview();
+	private static void drawCircle(RenderTarget target, DrawEvent drawEvent, double centerX, double centerY,
+								   double radius, int argb) {
+		if (drawEvent == DrawEvent.MOVE_OUTER_CIRCLE)
+			target.strokeCircle(centerX, centerY, radius, argb);
+		else
+			target.fillCircle(centerX, centerY, radius, argb);
 	}
 
 	/**
-	 * Draws a square on the canvas.
+	 * Draws a square on the render target.
 	 *
-	 * @param topLeft Top left coordinate on canvas where the square should be drawn
-	 * @param width   Width of the square (of one of the sides)
+	 * @param topLeftX Top left x coordinate on canvas where the square should be drawn
+	 * @param topLeftY Top left y coordinate on canvas where the square should be drawn
+	 * @param width    Width of the square (of one of the sides)
 	 */
-	public void drawSquare(Point topLeft, double width) {
-		scaleDrawPoints(topLeft);
+	public void drawSquare(double topLeftX, double topLeftY, double width) {
+		flush();
+		topLeftX = (int) (topLeftX * Recorder.resMultiplier);
+		topLeftY = (int) (topLeftY * Recorder.resMultiplier);
 		width *= Recorder.resMultiplier;
 
-		point.setLocation(topLeft);
+		int argb = Recorder.colorScheme.getArgb(DrawEvent.KEYSTROKE, topLeftX, topLeftY);
+		target.strokeRect(topLeftX, topLeftY, width, width, argb);
+		Metrics.drawCall();
 
-		gc.setStroke(Recorder.colorScheme.getColor(DrawEvent.KEYSTROKE, point));
-		gc.strokeRect(topLeft.x, topLeft.y, width, width);
-		main.refreshPreview();
+		if (preview != null) {
+			double previewWidth = width * previewScaleX, previewHeight = width * previewScaleY;
+			topLeftX *= previewScaleX;
+			topLeftY *= previewScaleY;
+			preview.strokeRect(topLeftX, topLeftY, previewWidth, previewHeight, argb);
+			dirtyRegion.add(topLeftX, topLeftY, topLeftX + previewWidth + 1, topLeftY + previewHeight + 1);
+		}
 	}
 }
@@ -0,0 +1,17 @@
+package iart.draw;
+
+import java.nio.IntBuffer;
+
+/**
+ * Keeps the pixels of the tiles in arrays on the Java heap.
+ */
+public class HeapTileStorage implements TileStorage {
+	@Override
+	public IntBuffer allocateTile(int pixels) {
+		return IntBuffer.wrap(new int[pixels]);
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,80 @@
+package iart.draw;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the pixels of the tiles in a memory-mapped file instead of on the Java heap, so that the size of a recording
+ * is not limited by the heap size. The operating system page cache decides which parts of the file are kept in memory
+ * and writes the rest out to disk as needed. The file grows in segments as tiles are allocated, and is deleted when
+ * the storage is closed.
+ */
+public class MappedTileStorage implements TileStorage {
+	private static final long segmentSize = 64L << 20; // Size of each mapping of the file, 64 MiB
+
+	private final Path file;
+	private final FileChannel channel;
+
+	private MappedByteBuffer segment;
+	private long segmentStart = -segmentSize; // Position of the current segment in the file
+	private long used = segmentSize; // Bytes of the current segment allocated to tiles
+
+	/**
+	 * Creates the backing file in a directory. The file is empty until tiles are allocated.
+	 *
+	 * @param directory Directory in which to create the backing file
+	 * @throws IOException If the backing file could not be created
+	 */
+	public MappedTileStorage(Path directory) throws IOException {
+		file = Files.createTempFile(directory, ".iart-canvas-", ".tmp");
+		file.toFile().deleteOnExit();
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	@Override
+	public IntBuffer allocateTile(int pixels) {
+		long bytes = pixels * 4L;
+		if (used + bytes > segmentSize) {
+			try {
+				segmentStart += segmentSize;
+				segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+				segment.order(ByteOrder.nativeOrder());
+				used = 0;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error growing the canvas file", e);
+			}
+		}
+
+		segment.limit((int) (used + bytes)).position((int) used);
+		IntBuffer tile = segment.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+		used += bytes;
+		return tile;
+	}
+
+	/**
+	 * Returns the size the backing file has grown to.
+	 *
+	 * @return Size of the backing file in bytes
+	 */
+	public long getFileSize() {
+		return segmentStart + segmentSize;
+	}
+
+	@Override
+	public void close() {
+		segment = null;
+		try {
+			channel.close();
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			System.err.println("Error deleting the canvas file: " + file); // Will be deleted on exit
+		}
+	}
+}
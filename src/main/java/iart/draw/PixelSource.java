@@ -0,0 +1,51 @@
+package iart.draw;
+
+/**
+ * Image whose pixels can be read back, such as a render target that rasterizes what is drawn on it. All colors are
+ * packed 32 bit ARGB integers (see the Argb class), and all coordinates are in pixels of the image, with the origin at
+ * the top left corner.
+ */
+public interface PixelSource {
+	/**
+	 * Returns the width of the image.
+	 *
+	 * @return Width of the image in pixels
+	 */
+	int getWidth();
+
+	/**
+	 * Returns the height of the image.
+	 *
+	 * @return Height of the image in pixels
+	 */
+	int getHeight();
+
+	/**
+	 * Copies a region of the image into an array, one ARGB integer per pixel. The region must lie within the bounds
+	 * of the image.
+	 *
+	 * @param x              Left edge of the region
+	 * @param y              Top edge of the region
+	 * @param width          Width of the region
+	 * @param height         Height of the region
+	 * @param dst            Array into which to copy the pixels
+	 * @param offset         Index in dst of the top left pixel of the region
+	 * @param scanlineStride Distance in dst between the start of two consecutive rows of the region
+	 */
+	void readPixels(int x, int y, int width, int height, int[] dst, int offset, int scanlineStride);
+
+	/**
+	 * Samples the image into a smaller image, using nearest neighbour sampling. Used to generate previews. Only the
+	 * given region of the smaller image is written, so that only the parts of a preview that have changed need to be
+	 * sampled again.
+	 *
+	 * @param dst       Array holding the smaller image, row by row, at least dstWidth * dstHeight pixels long
+	 * @param dstWidth  Width of the smaller image
+	 * @param dstHeight Height of the smaller image
+	 * @param fromX     Left edge (inclusive) of the region of the smaller image to write
+	 * @param fromY     Top edge (inclusive) of the region of the smaller image to write
+	 * @param toX       Right edge (exclusive) of the region of the smaller image to write
+	 * @param toY       Bottom edge (exclusive) of the region of the smaller image to write
+	 */
+	void sample(int[] dst, int dstWidth, int dstHeight, int fromX, int fromY, int toX, int toY);
+}
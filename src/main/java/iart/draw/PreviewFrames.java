@@ -0,0 +1,146 @@
+package iart.draw;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands preview frames over from the thread that draws them to the thread that presents them, without locks. Three
+ * frames are kept: one being drawn, one being presented, and the latest one drawn, waiting to be presented. Publishing
+ * a frame and taking the latest one are a single atomic swap each, so neither thread ever waits for the other, and a
+ * frame is never written while it is being presented. If frames are published faster than they are presented, the
+ * ones in between are skipped.
+ * <p>
+ * Frames are copied from the preview target, only the areas that changed since each frame was last drawn. Each frame
+ * also carries the region that changed since the frame published before it, so presenting consecutive frames only
+ * requires uploading that region.
+ */
+public class PreviewFrames {
+	private final AtomicReference<Frame> latest = new AtomicReference<>(new Frame());
+
+	// Only accessed from the drawing thread
+	private final Frame[] frames;
+	private Frame back = new Frame();
+	private long sequence;
+
+	// Only accessed from the presenting thread
+	private Frame front = new Frame();
+
+	/**
+	 * Creates the three frames, all empty.
+	 */
+	public PreviewFrames() {
+		frames = new Frame[]{back, front, latest.get()};
+	}
+
+	/**
+	 * Copies the areas of the preview target that changed into a new frame, and makes it the latest frame. Must only
+	 * be called from the thread that draws on the preview target.
+	 *
+	 * @param preview   Preview target to copy the frame from
+	 * @param dirty     Region of the preview target drawn on since the last frame was published, cleared here
+	 * @param inputTime Time the oldest input event drawn in the frame was received, or 0 if unknown
+	 * @return False if nothing changed, and no frame was published
+	 */
+	public boolean publish(RasterRenderTarget preview, DirtyRegion dirty, long inputTime) {
+		int width = preview.getWidth(), height = preview.getHeight();
+		int fromX = Math.max(dirty.getMinX(), 0), fromY = Math.max(dirty.getMinY(), 0);
+		int toX = Math.min(dirty.getMaxX(), width), toY = Math.min(dirty.getMaxY(), height);
+		dirty.clear();
+		if (fromX >= toX || fromY >= toY)
+			return false;
+
+		for (Frame frame : frames)
+			frame.stale.add(fromX, fromY, toX, toY);
+		if (back.width != width || back.height != height) {
+			back.pixels = new int[width * height];
+			back.width = width;
+			back.height = height;
+			back.stale.addAll(width, height);
+		}
+
+		DirtyRegion stale = back.stale;
+		int staleFromX = Math.max(stale.getMinX(), 0), staleFromY = Math.max(stale.getMinY(), 0);
+		int staleToX = Math.min(stale.getMaxX(), width), staleToY = Math.min(stale.getMaxY(), height);
+		preview.readPixels(staleFromX, staleFromY, staleToX - staleFromX, staleToY - staleFromY, back.pixels,
+						   staleFromY * width + staleFromX, width);
+		stale.clear();
+
+		back.changed.clear();
+		back.changed.add(fromX, fromY, toX, toY);
+		back.sequence = ++sequence;
+		back.inputTime = inputTime;
+		back = latest.getAndSet(back);
+		return true;
+	}
+
+	/**
+	 * Takes the latest frame, if it has not been taken already. The frame can be read until the next call, after
+	 * which it may be drawn on again. Must only be called from the thread that presents the frames.
+	 *
+	 * @return Latest frame, or null if no frame has been published since the last one taken
+	 */
+	public Frame take() {
+		if (latest.get().sequence <= front.sequence)
+			return null;
+		front = latest.getAndSet(front);
+		return front;
+	}
+
+	/**
+	 * Copy of the preview target at the time it was published.
+	 */
+	public static final class Frame {
+		private int[] pixels = new int[0];
+		private int width, height;
+		private long sequence; // Position of the frame in the order frames were published, 0 if never published
+		private long inputTime;
+		private final DirtyRegion changed = new DirtyRegion(); // Changes since the frame published before
+
+		private final DirtyRegion stale = new DirtyRegion(); // Changes not yet copied, only used by the drawing thread
+
+		/**
+		 * Returns the pixels of the frame, row by row, one ARGB integer per pixel.
+		 *
+		 * @return Pixels of the frame, which must not be modified
+		 */
+		public int[] getPixels() {
+			return pixels;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * Returns the position of the frame in the order frames were published, starting at 1. If it does not follow
+		 * the last frame presented, frames were skipped, and the whole frame must be presented.
+		 *
+		 * @return Sequence number of the frame
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the time the oldest input event drawn in the frame was received, to measure how long it took for
+		 * the event to be shown.
+		 *
+		 * @return Time from Metrics.now(), or 0 if unknown
+		 */
+		public long getInputTime() {
+			return inputTime;
+		}
+
+		/**
+		 * Returns the region that changed since the frame published before this one.
+		 *
+		 * @return Region of the frame that changed, in pixels
+		 */
+		public DirtyRegion getChangedRegion() {
+			return changed;
+		}
+	}
+}
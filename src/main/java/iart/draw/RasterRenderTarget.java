@@ -0,0 +1,89 @@
+package iart.draw;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Software implementation of RenderTarget, which draws into an ARGB pixel array held in memory. Since it does not
+ * depend on the JavaFX toolkit, it can be used to render without a UI, and its pixels can be read back directly when
+ * saving or previewing the image, without having to take snapshots of a canvas.
+ */
+public class RasterRenderTarget extends AbstractRasterTarget implements PixelSource {
+	private final int[] pixels;
+
+	/**
+	 * Allocates a raster of the given size, which draws fast lines. All pixels are initially transparent.
+	 *
+	 * @param width  Width of the raster in pixels
+	 * @param height Height of the raster in pixels
+	 */
+	public RasterRenderTarget(int width, int height) {
+		this(width, height, LineQuality.FAST);
+	}
+
+	/**
+	 * Allocates a raster of the given size. All pixels are initially transparent.
+	 *
+	 * @param width       Width of the raster in pixels
+	 * @param height      Height of the raster in pixels
+	 * @param lineQuality How lines are rasterized
+	 */
+	public RasterRenderTarget(int width, int height, LineQuality lineQuality) {
+		super(width, height, lineQuality);
+		if ((long) width * height > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Raster of " + width + "x" + height + " pixels is too large");
+		pixels = new int[width * height];
+	}
+
+	/**
+	 * Returns the pixels of the raster, row by row, one ARGB integer per pixel.
+	 *
+	 * @return Backing pixel array of the raster, changes to it are visible in the raster
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Returns the pixels of the raster wrapped in an IntBuffer.
+	 *
+	 * @return IntBuffer backed by the pixel array of the raster
+	 */
+	public IntBuffer getPixelBuffer() {
+		return IntBuffer.wrap(pixels);
+	}
+
+	@Override
+	public void fill(int argb) {
+		Arrays.fill(pixels, argb);
+	}
+
+	@Override
+	public void readPixels(int x, int y, int width, int height, int[] dst, int offset, int scanlineStride) {
+		for (int row = 0; row < height; row++)
+			System.arraycopy(pixels, (y + row) * this.width + x, dst, offset + row * scanlineStride, width);
+	}
+
+	@Override
+	public void sample(int[] dst, int dstWidth, int dstHeight, int fromX, int fromY, int toX, int toY) {
+		for (int y = fromY; y < toY; y++) {
+			int srcRow = (int) ((long) y * height / dstHeight) * width;
+			int dstRow = y * dstWidth;
+			for (int x = fromX; x < toX; x++)
+				dst[dstRow + x] = pixels[srcRow + (int) ((long) x * width / dstWidth)];
+		}
+	}
+
+	@Override
+	protected void blendPixel(int x, int y, int argb) {
+		int i = y * width + x;
+		pixels[i] = Argb.blend(pixels[i], argb);
+	}
+
+	@Override
+	protected void blendPixels(int y, int startX, int endX, int argb) {
+		int row = y * width;
+		for (int i = row + startX; i <= row + endX; i++)
+			pixels[i] = Argb.blend(pixels[i], argb);
+	}
+}
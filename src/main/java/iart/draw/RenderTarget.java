@@ -0,0 +1,90 @@
+package iart.draw;
+
+/**
+ * Surface on which the Drawer class draws. All colors are packed 32 bit ARGB integers (see the Argb class), and all
+ * coordinates are in pixels of the target, with the origin at the top left corner.
+ * <p>
+ * Implementations are not required to be thread safe, all draw calls should be made from a single thread. Targets
+ * that rasterize what is drawn on them also implement PixelSource, so their pixels can be read back.
+ */
+public interface RenderTarget {
+	/**
+	 * Returns the width of the target.
+	 *
+	 * @return Width of the target in pixels
+	 */
+	int getWidth();
+
+	/**
+	 * Returns the height of the target.
+	 *
+	 * @return Height of the target in pixels
+	 */
+	int getHeight();
+
+	/**
+	 * Fills the whole target with a color, discarding anything drawn on it previously.
+	 *
+	 * @param argb Color to fill the target with
+	 */
+	void fill(int argb);
+
+	/**
+	 * Draws a line one pixel wide between two points.
+	 *
+	 * @param x0   Line start x coordinate
+	 * @param y0   Line start y coordinate
+	 * @param x1   Line end x coordinate
+	 * @param y1   Line end y coordinate
+	 * @param argb Color of the line
+	 */
+	void strokeLine(double x0, double y0, double x1, double y1, int argb);
+
+	/**
+	 * Draws lines one pixel wide joining a sequence of points. The default implementation draws each line with
+	 * strokeLine(), so the points where the lines meet are drawn twice, implementations may draw them only once.
+	 *
+	 * @param xs     X coordinates of the points
+	 * @param ys     Y coordinates of the points
+	 * @param offset Index of the first point in the arrays
+	 * @param count  Number of points, at least one
+	 * @param argb   Color of the lines
+	 */
+	default void strokePolyline(double[] xs, double[] ys, int offset, int count, int argb) {
+		if (count == 1)
+			strokeLine(xs[offset], ys[offset], xs[offset], ys[offset], argb);
+		for (int i = offset + 1; i < offset + count; i++)
+			strokeLine(xs[i - 1], ys[i - 1], xs[i], ys[i], argb);
+	}
+
+	/**
+	 * Draws a filled circle.
+	 *
+	 * @param cx     Circle centre x coordinate
+	 * @param cy     Circle centre y coordinate
+	 * @param radius Radius of the circle
+	 * @param argb   Color of the circle
+	 */
+	void fillCircle(double cx, double cy, double radius, int argb);
+
+	/**
+	 * Draws the outline of a circle, one pixel wide.
+	 *
+	 * @param cx     Circle centre x coordinate
+	 * @param cy     Circle centre y coordinate
+	 * @param radius Radius of the circle
+	 * @param argb   Color of the outline
+	 */
+	void strokeCircle(double cx, double cy, double radius, int argb);
+
+	/**
+	 * Draws the outline of a rectangle, one pixel wide.
+	 *
+	 * @param x      Top left x coordinate
+	 * @param y      Top left y coordinate
+	 * @param width  Width of the rectangle
+	 * @param height Height of the rectangle
+	 * @param argb   Color of the outline
+	 */
+	void strokeRect(double x, double y, double width, double height, int argb);
+}
@@ -0,0 +1,191 @@
+package iart.draw;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of circles rasterized into stamps, which hold the spans of pixels each row of the circle covers, relative to
+ * the pixel its centre is in, so most circles can be blended straight from a stamp, without working out the edges of
+ * every row again. The radius of a circle and the position of its centre within its pixel are rounded to a grid of
+ * 1 / subpixels pixels before it is looked up, which moves its edges by at most an eighth of a pixel, so circles drawn
+ * with fractional sizes and positions, such as the idle circles and everything drawn on the preview, share stamps
+ * instead of each rasterizing one of its own. The grid is applied to every circle a stamp is used for, so a shape is
+ * drawn the same way on every target.
+ * <p>
+ * Each thread has its own cache, since the tiles of a journal are rasterized in parallel, and the least recently used
+ * stamp is evicted when a cache is full. Circles larger than maxRadius are not cached, they are rarely the same size
+ * twice, and their stamps would take up a lot of memory.
+ */
+public final class StampCache {
+	public static final double maxRadius = 256; // Largest radius of the circles cached, in pixels
+	public static final int subpixels = 4; // Steps per pixel of the grid radii and centres are rounded to
+	private static final int maxStamps = 1024; // Stamps kept by each thread
+
+	private static final ThreadLocal<StampCache> caches = ThreadLocal.withInitial(StampCache::new);
+	private static final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+	private final Key probe = new Key(); // Reused to look stamps up, so a hit allocates nothing
+	private final Map<Key, Stamp> stamps = new LinkedHashMap<Key, Stamp>(maxStamps * 2, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Stamp> eldest) {
+			return size() > maxStamps;
+		}
+	};
+
+	private StampCache() {
+	}
+
+	/**
+	 * Returns the stamp of a circle, from the cache of the calling thread, rasterizing it if it is not cached. The
+	 * radius and position are given in steps of 1 / subpixels pixels.
+	 *
+	 * @param outline True for the outline of the circle, false for the filled circle
+	 * @param radius  Radius of the circle, at most maxRadius * subpixels
+	 * @param offsetX Position of the centre within its pixel, from 0 (inclusive) to subpixels (exclusive)
+	 * @param offsetY Position of the centre within its pixel, from 0 (inclusive) to subpixels (exclusive)
+	 * @return Stamp of the circle
+	 */
+	static Stamp getCircle(boolean outline, int radius, int offsetX, int offsetY) {
+		StampCache cache = caches.get();
+		Key probe = cache.probe.set(outline, radius, offsetX, offsetY);
+		Stamp stamp = cache.stamps.get(probe);
+		if (stamp != null) {
+			hits.increment();
+			return stamp;
+		}
+
+		misses.increment();
+		double r = radius / (double) subpixels, cx = offsetX / (double) subpixels, cy = offsetY / (double) subpixels;
+		stamp = outline ? Stamp.strokeCircle(r, cx, cy) : Stamp.fillCircle(r, cx, cy);
+		cache.stamps.put(new Key().set(outline, radius, offsetX, offsetY), stamp);
+		return stamp;
+	}
+
+	/**
+	 * Returns the number of circles drawn from a cached stamp, by all threads.
+	 *
+	 * @return Number of cache hits
+	 */
+	public static long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of circles that had to be rasterized into a new stamp, by all threads.
+	 *
+	 * @return Number of cache misses
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of the circles drawn from a cached stamp.
+	 *
+	 * @return Hit rate, from 0 to 1, or 0 if no circles have been drawn
+	 */
+	public static double getHitRate() {
+		long hits = getHits(), lookups = hits + getMisses();
+		return lookups == 0 ? 0 : hits / (double) lookups;
+	}
+
+	private static final class Key {
+		private boolean outline;
+		private int radius, offsetX, offsetY;
+
+		private Key set(boolean outline, int radius, int offsetX, int offsetY) {
+			this.outline = outline;
+			this.radius = radius;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key) o;
+			return outline == key.outline && radius == key.radius && offsetX == key.offsetX &&
+				   offsetY == key.offsetY;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((radius * 31 + offsetX) * 31 + offsetY) * 2 + (outline ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Rows of pixels covered by a circle, each with up to two spans, both ends included. Columns are relative to the
+	 * pixel the centre of the circle is in, and rows start at top rows from it. Spans that cover no pixels have their
+	 * start after their end.
+	 */
+	static final class Stamp {
+		final int top, rows;
+		final int[] spans; // Start and end of the first span, then start and end of the second span, for each row
+
+		private Stamp(int top, int rows) {
+			this.top = top;
+			this.rows = rows;
+			spans = new int[rows * 4];
+			for (int i = 0; i < spans.length; i += 2) {
+				spans[i] = 0;
+				spans[i + 1] = -1;
+			}
+		}
+
+		/**
+		 * Rasterizes a filled circle the same way AbstractRasterTarget does: a pixel is inside the circle if its
+		 * centre is inside it.
+		 */
+		private static Stamp fillCircle(double radius, double cx, double cy) {
+			int top = (int) Math.floor(cy - radius);
+			Stamp stamp = new Stamp(top, (int) Math.ceil(cy + radius) - top + 1);
+			for (int row = 0; row < stamp.rows; row++) {
+				double dy = top + row + 0.5 - cy;
+				double halfWidth = radius * radius - dy * dy;
+				if (halfWidth < 0)
+					continue;
+				halfWidth = Math.sqrt(halfWidth);
+				stamp.spans[row * 4] = (int) Math.ceil(cx - halfWidth - 0.5);
+				stamp.spans[row * 4 + 1] = (int) Math.floor(cx + halfWidth - 0.5);
+			}
+			return stamp;
+		}
+
+		/**
+		 * Rasterizes the outline of a circle the same way AbstractRasterTarget does: a pixel belongs to the outline if
+		 * its centre is less than half a pixel away from the circle.
+		 */
+		private static Stamp strokeCircle(double radius, double cx, double cy) {
+			double outer = radius + 0.5, inner = radius - 0.5;
+			int top = (int) Math.floor(cy - outer);
+			Stamp stamp = new Stamp(top, (int) Math.ceil(cy + outer) - top + 1);
+			for (int row = 0; row < stamp.rows; row++) {
+				double dy = top + row + 0.5 - cy;
+				double outerHalf = outer * outer - dy * dy;
+				if (outerHalf < 0)
+					continue;
+				outerHalf = Math.sqrt(outerHalf);
+				int outerStart = (int) Math.ceil(cx - outerHalf - 0.5);
+				int outerEnd = (int) Math.floor(cx + outerHalf - 0.5);
+
+				double innerHalf = inner > 0 ? inner * inner - dy * dy : -1;
+				int i = row * 4;
+				if (innerHalf < 0) {
+					stamp.spans[i] = outerStart;
+					stamp.spans[i + 1] = outerEnd;
+				} else {
+					innerHalf = Math.sqrt(innerHalf);
+					stamp.spans[i] = outerStart;
+					stamp.spans[i + 1] = (int) Math.ceil(cx - innerHalf - 0.5) - 1;
+					stamp.spans[i + 2] = (int) Math.floor(cx + innerHalf - 0.5) + 1;
+					stamp.spans[i + 3] = outerEnd;
+				}
+			}
+			return stamp;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package iart.draw;
+
+import java.io.Closeable;
+import java.nio.IntBuffer;
+
+/**
+ * Provides the memory in which TiledRenderTarget keeps the pixels of its tiles.
+ */
+public interface TileStorage extends Closeable {
+	/**
+	 * Allocates the memory for a new tile.
+	 *
+	 * @param pixels Number of pixels in the tile
+	 * @return Buffer holding the pixels of the tile, with its position at 0 and its limit at the number of pixels.
+	 * Its contents are undefined
+	 */
+	IntBuffer allocateTile(int pixels);
+
+	/**
+	 * Releases all the memory used by the tiles. None of the tiles allocated can be used afterwards.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,337 @@
+package iart.draw;
+
+import java.io.Closeable;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse software render target. The surface is split into square tiles, and a tile only gets its own pixels the
+ * first time something is drawn on it. Until then it is represented by the background color, which is what the
+ * whole target is filled with. Since most of a recording never gets drawn on, memory use follows how much of the
+ * screen was actually used, rather than the size of the target, which makes much larger resolution multipliers
+ * practical.
+ * <p>
+ * The pixels of the tiles are kept in a TileStorage, either on the heap, or in a memory-mapped file for recordings
+ * that would not fit on the heap. Closing the target releases the storage.
+ */
+public class TiledRenderTarget extends AbstractRasterTarget implements PixelSource, Closeable {
+	public static final int tileShift = 8;
+	public static final int tileSize = 1 << tileShift; // Width and height of the tiles, in pixels
+	private static final int tileMask = tileSize - 1;
+
+	private final TileStorage storage;
+	private final int tilesX, tilesY;
+	private final IntBuffer[] tiles; // Tiles in row order, null until drawn on
+	private int background;
+	private int allocatedTiles;
+
+	// Tiles drawn on since the dirty tiles were last taken, as flags and as a list of tile indices
+	private final boolean[] dirty;
+	private int[] dirtyTiles = new int[64];
+	private int dirtyCount;
+
+	/**
+	 * Creates a target of the given size, which keeps its tiles on the heap and draws fast lines. No memory is
+	 * allocated for its pixels until something is drawn on it, all pixels are initially transparent.
+	 *
+	 * @param width  Width of the target in pixels
+	 * @param height Height of the target in pixels
+	 */
+	public TiledRenderTarget(int width, int height) {
+		this(width, height, new HeapTileStorage(), LineQuality.FAST);
+	}
+
+	/**
+	 * Creates a target of the given size. No memory is allocated for its pixels until something is drawn on it, all
+	 * pixels are initially transparent.
+	 *
+	 * @param width       Width of the target in pixels
+	 * @param height      Height of the target in pixels
+	 * @param storage     Storage in which to keep the pixels of the tiles
+	 * @param lineQuality How lines are rasterized
+	 */
+	public TiledRenderTarget(int width, int height, TileStorage storage, LineQuality lineQuality) {
+		super(width, height, lineQuality);
+		this.storage = storage;
+		tilesX = (width + tileMask) >> tileShift;
+		tilesY = (height + tileMask) >> tileShift;
+		tiles = new IntBuffer[tilesX * tilesY];
+		dirty = new boolean[tiles.length];
+	}
+
+	/**
+	 * Returns the number of bytes a target of the given size would use if every one of its tiles was drawn on.
+	 *
+	 * @param width  Width of the target in pixels
+	 * @param height Height of the target in pixels
+	 * @return Maximum size of the target in bytes
+	 */
+	public static long getMaxBytes(int width, int height) {
+		return (long) ((width + tileMask) >> tileShift) * ((height + tileMask) >> tileShift) * tileSize * tileSize * 4;
+	}
+
+	/**
+	 * Fills the whole target with a color. All tiles go back to being represented by the color. The storage used by
+	 * the tiles is not reclaimed until the target is closed.
+	 *
+	 * @param argb Color to fill the target with
+	 */
+	@Override
+	public void fill(int argb) {
+		background = argb;
+		for (int i = 0; i < tiles.length; i++)
+			if (tiles[i] != null)
+				markDirty(i);
+		Arrays.fill(tiles, null);
+		allocatedTiles = 0;
+	}
+
+	public int getBackground() {
+		return background;
+	}
+
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	/**
+	 * Returns the pixels of a tile, row by row, tileSize pixels per row. Tiles on the right and bottom edges of the
+	 * target may extend beyond it, the pixels outside of the target are never drawn on.
+	 *
+	 * @param tileX Column of the tile
+	 * @param tileY Row of the tile
+	 * @return Pixels of the tile, or null if nothing has been drawn on it, in which case all its pixels are the
+	 * background color
+	 */
+	public IntBuffer getTile(int tileX, int tileY) {
+		return tiles[tileY * tilesX + tileX];
+	}
+
+	/**
+	 * Copies the pixels of a tile, row by row, tileSize pixels per row.
+	 *
+	 * @param tileX Column of the tile
+	 * @param tileY Row of the tile
+	 * @param dst   Array in which to copy the pixels, at least tileSize * tileSize long
+	 */
+	public void copyTile(int tileX, int tileY, int[] dst) {
+		IntBuffer tile = tiles[tileY * tilesX + tileX];
+		if (tile == null) {
+			Arrays.fill(dst, 0, tileSize * tileSize, background);
+		} else {
+			tile.position(0);
+			tile.get(dst, 0, tileSize * tileSize);
+			tile.position(0);
+		}
+	}
+
+	/**
+	 * Replaces the pixels of a tile, which is used to restore a target that was saved tile by tile. The tile is not
+	 * marked as dirty.
+	 *
+	 * @param tileX  Column of the tile
+	 * @param tileY  Row of the tile
+	 * @param pixels Pixels of the tile, row by row, tileSize pixels per row
+	 */
+	public void setTile(int tileX, int tileY, int[] pixels) {
+		int index = tileY * tilesX + tileX;
+		IntBuffer tile = tiles[index] != null ? tiles[index] : allocateTile(index);
+		tile.position(0);
+		tile.put(pixels, 0, tileSize * tileSize);
+		tile.position(0);
+	}
+
+	/**
+	 * Returns the tiles that have been drawn on since the last time this method was called, and starts tracking them
+	 * again from scratch. The cost of this method is proportional to the number of tiles drawn on, not to the size of
+	 * the target.
+	 *
+	 * @return Indices of the tiles drawn on, in row order (tileY * tilesX + tileX), in no particular order
+	 */
+	public int[] takeDirtyTiles() {
+		int[] taken = Arrays.copyOf(dirtyTiles, dirtyCount);
+		for (int index : taken)
+			dirty[index] = false;
+		dirtyCount = 0;
+		return taken;
+	}
+
+	private void markDirty(int index) {
+		if (dirty[index])
+			return;
+		dirty[index] = true;
+		if (dirtyCount == dirtyTiles.length)
+			dirtyTiles = Arrays.copyOf(dirtyTiles, dirtyCount * 2);
+		dirtyTiles[dirtyCount++] = index;
+	}
+
+	/**
+	 * Returns a render target that draws on a single tile of this target, and ignores anything outside of it. It uses
+	 * the same coordinates as this target. The targets of different tiles can be drawn on from different threads at
+	 * the same time, as long as nothing is drawn on this target directly meanwhile. The tile is allocated straight
+	 * away, so this must be called from the thread that draws on this target.
+	 *
+	 * @param tileX Column of the tile
+	 * @param tileY Row of the tile
+	 * @return RenderTarget drawing on the tile
+	 */
+	public RenderTarget getTileTarget(int tileX, int tileY) {
+		return new TileTarget(tileX, tileY, materializeTile(tileX, tileY));
+	}
+
+	/**
+	 * Returns the number of tiles that have been drawn on, and therefore have their own pixel array.
+	 *
+	 * @return Number of tiles allocated
+	 */
+	public int getAllocatedTiles() {
+		return allocatedTiles;
+	}
+
+	/**
+	 * Returns the memory used by the pixels of the tiles that have been drawn on.
+	 *
+	 * @return Bytes used by the allocated tiles
+	 */
+	public long getAllocatedBytes() {
+		return (long) allocatedTiles * tileSize * tileSize * 4;
+	}
+
+	/**
+	 * Returns the pixels of a tile, allocating them if this is the first time the tile is drawn on, and marks it as
+	 * dirty.
+	 */
+	private IntBuffer materializeTile(int tileX, int tileY) {
+		int index = tileY * tilesX + tileX;
+		if (!dirty[index])
+			markDirty(index);
+		IntBuffer tile = tiles[index];
+		return tile != null ? tile : allocateTile(index);
+	}
+
+	/**
+	 * Allocates the pixels of a tile, filled with the background color.
+	 */
+	private IntBuffer allocateTile(int index) {
+		IntBuffer tile = storage.allocateTile(tileSize * tileSize);
+		for (int i = 0; i < tileSize * tileSize; i++)
+			tile.put(i, background);
+		tiles[index] = tile;
+		allocatedTiles++;
+		return tile;
+	}
+
+	@Override
+	protected void blendPixel(int x, int y, int argb) {
+		IntBuffer tile = materializeTile(x >> tileShift, y >> tileShift);
+		int i = ((y & tileMask) << tileShift) | (x & tileMask);
+		tile.put(i, Argb.blend(tile.get(i), argb));
+	}
+
+	@Override
+	protected void blendPixels(int y, int startX, int endX, int argb) {
+		int tileY = y >> tileShift, rowStart = (y & tileMask) << tileShift;
+		for (int x = startX; x <= endX; ) {
+			IntBuffer tile = materializeTile(x >> tileShift, tileY);
+			int spanEnd = Math.min(endX, x | tileMask); // Last pixel of the span within this tile
+			for (int i = rowStart + (x & tileMask), end = rowStart + (spanEnd & tileMask); i <= end; i++)
+				tile.put(i, Argb.blend(tile.get(i), argb));
+			x = spanEnd + 1;
+		}
+	}
+
+	@Override
+	public void readPixels(int x, int y, int width, int height, int[] dst, int offset, int scanlineStride) {
+		for (int row = y; row < y + height; row++) {
+			int tileY = row >> tileShift, tileRow = (row & tileMask) << tileShift;
+			int dstRow = offset + (row - y) * scanlineStride - x;
+			for (int col = x; col < x + width; ) {
+				IntBuffer tile = tiles[tileY * tilesX + (col >> tileShift)];
+				int spanEnd = Math.min(x + width - 1, col | tileMask);
+				if (tile == null) {
+					Arrays.fill(dst, dstRow + col, dstRow + spanEnd + 1, background);
+				} else if (tile.hasArray()) {
+					System.arraycopy(tile.array(), tile.arrayOffset() + tileRow + (col & tileMask), dst, dstRow + col,
+									 spanEnd - col + 1);
+				} else {
+					for (int i = tileRow + (col & tileMask), j = dstRow + col; j <= dstRow + spanEnd; i++, j++)
+						dst[j] = tile.get(i);
+				}
+				col = spanEnd + 1;
+			}
+		}
+	}
+
+	@Override
+	public void sample(int[] dst, int dstWidth, int dstHeight, int fromX, int fromY, int toX, int toY) {
+		for (int y = fromY; y < toY; y++) {
+			int srcY = (int) ((long) y * height / dstHeight);
+			int tileRowIndex = (srcY >> tileShift) * tilesX, tileRow = (srcY & tileMask) << tileShift;
+			int dstRow = y * dstWidth;
+			for (int x = fromX; x < toX; x++) {
+				int srcX = (int) ((long) x * width / dstWidth);
+				IntBuffer tile = tiles[tileRowIndex + (srcX >> tileShift)];
+				dst[dstRow + x] = tile == null ? background : tile.get(tileRow | (srcX & tileMask));
+			}
+		}
+	}
+
+	/**
+	 * Releases the storage of the tiles. The target can not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		Arrays.fill(tiles, null);
+		storage.close();
+	}
+
+	/**
+	 * Draws on a single tile, clipping everything else out.
+	 */
+	private class TileTarget extends AbstractRasterTarget {
+		private final IntBuffer tile;
+		private final int minX, minY, maxX, maxY; // Pixels of the target covered by the tile, all inclusive
+
+		TileTarget(int tileX, int tileY, IntBuffer tile) {
+			super(TiledRenderTarget.this.width, TiledRenderTarget.this.height,
+				  TiledRenderTarget.this.getLineQuality());
+			this.tile = tile;
+			minX = tileX << tileShift;
+			minY = tileY << tileShift;
+			maxX = minX + tileMask;
+			maxY = minY + tileMask;
+		}
+
+		@Override
+		protected void blendPixel(int x, int y, int argb) {
+			if (x < minX || x > maxX || y < minY || y > maxY)
+				return;
+			int i = ((y & tileMask) << tileShift) | (x & tileMask);
+			tile.put(i, Argb.blend(tile.get(i), argb));
+		}
+
+		@Override
+		protected void blendPixels(int y, int startX, int endX, int argb) {
+			if (y < minY || y > maxY)
+				return;
+			int rowStart = (y & tileMask) << tileShift;
+			for (int x = Math.max(startX, minX), end = Math.min(endX, maxX); x <= end; x++) {
+				int i = rowStart | (x & tileMask);
+				tile.put(i, Argb.blend(tile.get(i), argb));
+			}
+		}
+
+		/**
+		 * Fills the pixels of the tile, clipped like everything else drawn on it.
+		 */
+		@Override
+		public void fill(int argb) {
+			for (int i = 0; i < tileSize * tileSize; i++)
+				tile.put(i, argb);
+		}
+	}
+}
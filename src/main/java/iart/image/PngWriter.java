@@ -0,0 +1,323 @@
+package iart.image;
+
+import iart.draw.PixelSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleConsumer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes the contents of a PixelSource, such as a render target, as a PNG file, streaming it to disk as it is
+ * encoded. The source is read in strips of rows, which are filtered and compressed in parallel, and written to the
+ * IDAT chunks of the file in order as they are completed, so the memory used while saving is bounded by a few strips,
+ * instead of by the size of the image.
+ * <p>
+ * Images are written as 8 bit RGBA, non interlaced. Each row is filtered with whichever of the five PNG filters
+ * gives the smallest sum of absolute values, which is the heuristic recommended by the PNG specification.
+ */
+public class PngWriter {
+	private static final byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+	private static final int stripHeight = 256; // Number of rows compressed together by each thread
+	private static final int chunkSize = 1 << 16; // Maximum size of the IDAT chunks written
+
+	private final PixelSource source;
+	private final int width, height;
+	private final int compressionLevel, threads;
+
+	private FileChannel channel;
+	private final CRC32 crc = new CRC32();
+
+	private DoubleConsumer progressListener = progress -> {
+	};
+
+	/**
+	 * Prepares to encode the given image. Nothing is read from it until write() is called.
+	 *
+	 * @param source           PixelSource to encode
+	 * @param compressionLevel Deflate compression level, from 0 (no compression) to 9 (best compression)
+	 * @param threads          Number of threads with which to compress the image
+	 */
+	public PngWriter(PixelSource source, int compressionLevel, int threads) {
+		if (compressionLevel < 0 || compressionLevel > 9)
+			throw new IllegalArgumentException("Compression level must be between 0 and 9");
+		this.source = source;
+		this.width = source.getWidth();
+		this.height = source.getHeight();
+		this.compressionLevel = compressionLevel;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Sets a listener that is notified every time a strip of the image has been written, with the fraction of the
+	 * image written so far, from 0 to 1. It is called from the thread calling write().
+	 *
+	 * @param progressListener Listener to notify
+	 */
+	public void setProgressListener(DoubleConsumer progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Encodes the image and writes it to a file, replacing the file if it already exists.
+	 *
+	 * @param path Location of the file to write
+	 * @throws IOException If the file could not be written
+	 */
+	public void write(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+													StandardOpenOption.TRUNCATE_EXISTING)) {
+			this.channel = channel;
+
+			writeFully(ByteBuffer.wrap(signature));
+			writeHeader();
+			writeImageData();
+			writeChunk("IEND", ByteBuffer.allocate(0));
+		} finally {
+			channel = null;
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer ihdr = ByteBuffer.allocate(13);
+		ihdr.putInt(width).putInt(height);
+		ihdr.put((byte) 8); // Bit depth
+		ihdr.put((byte) 6); // Color type, RGBA
+		ihdr.put((byte) 0); // Compression method, deflate
+		ihdr.put((byte) 0); // Filter method, adaptive
+		ihdr.put((byte) 0); // Interlace method, none
+		ihdr.flip();
+		writeChunk("IHDR", ihdr);
+	}
+
+	/**
+	 * Splits the image into strips of rows, which are filtered and compressed in parallel, and writes the compressed
+	 * strips in order as they are completed. Each strip is compressed into a raw deflate stream that ends on a byte
+	 * boundary (with a sync flush), except for the last one, which finishes the stream. Concatenated, and wrapped in
+	 * a zlib header and trailer, they form a valid zlib stream, which is what IDAT chunks hold. This is the same
+	 * technique pigz uses to compress in parallel.
+	 * <p>
+	 * At most twice as many strips as there are threads are kept in memory at once, so memory use is bounded by the
+	 * number of threads, not by the size of the image.
+	 */
+	private void writeImageData() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ArrayDeque<ForkJoinTask<Strip>> pending = new ArrayDeque<>();
+		ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+
+		try {
+			chunk.put(zlibHeader(compressionLevel));
+			long adler = 1L;
+			int rowsWritten = 0;
+
+			for (int stripY = 0; stripY < height || !pending.isEmpty(); ) {
+				if (stripY < height && pending.size() < threads * 2) {
+					int y = stripY, rows = Math.min(stripHeight, height - stripY);
+					pending.add(pool.submit(() -> compressStrip(y, rows)));
+					stripY += rows;
+					continue;
+				}
+
+				Strip strip = pending.remove().join();
+				adler = adler32Combine(adler, strip.adler, strip.uncompressedLength);
+				writeCompressed(strip.data, strip.length, chunk);
+				rowsWritten += strip.rows;
+				progressListener.accept(rowsWritten / (double) height);
+			}
+
+			ByteBuffer trailer = ByteBuffer.allocate(4);
+			trailer.putInt((int) adler);
+			writeCompressed(trailer.array(), 4, chunk);
+			if (chunk.position() > 0) {
+				chunk.flip();
+				writeChunk("IDAT", chunk);
+			}
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads, filters and compresses a strip of rows. The row above the strip is read too, since the filters use it.
+	 *
+	 * @param y    First row of the strip
+	 * @param rows Number of rows in the strip
+	 * @return Compressed strip
+	 */
+	private Strip compressStrip(int y, int rows) {
+		int rowBytes = width * 4;
+		int firstRow = Math.max(y - 1, 0);
+		int[] pixels = new int[width * (y + rows - firstRow)];
+		source.readPixels(0, firstRow, width, y + rows - firstRow, pixels, 0, width);
+
+		byte[] prevRow = new byte[rowBytes], currRow = new byte[rowBytes];
+		if (y > 0)
+			toRgba(pixels, 0, prevRow);
+		RowFilter filter = new RowFilter(rowBytes);
+
+		Deflater deflater = new Deflater(compressionLevel, true);
+		Adler32 adler = new Adler32();
+		Strip strip = new Strip(rowBytes * rows / 4 + 64);
+		try {
+			for (int row = y - firstRow; row < y - firstRow + rows; row++) {
+				toRgba(pixels, row * width, currRow);
+				byte[] filtered = filter.filter(currRow, prevRow);
+				adler.update(filtered, 0, filtered.length);
+				deflater.setInput(filtered, 0, filtered.length);
+				while (!deflater.needsInput())
+					strip.deflate(deflater, Deflater.NO_FLUSH);
+
+				byte[] tmp = prevRow;
+				prevRow = currRow;
+				currRow = tmp;
+			}
+
+			if (y + rows == height) {
+				deflater.finish();
+				while (!deflater.finished())
+					strip.deflate(deflater, Deflater.NO_FLUSH);
+			} else {
+				// Flush until the deflater has room left over, which means it has output everything
+				do {
+					strip.deflate(deflater, Deflater.SYNC_FLUSH);
+				} while (strip.length == strip.data.length);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		strip.rows = rows;
+		strip.adler = adler.getValue();
+		strip.uncompressedLength = (long) (rowBytes + 1) * rows;
+		return strip;
+	}
+
+	/**
+	 * Adds compressed data to the chunk buffer, writing the buffer out as an IDAT chunk every time it fills up.
+	 */
+	private void writeCompressed(byte[] data, int length, ByteBuffer chunk) throws IOException {
+		for (int offset = 0; offset < length; ) {
+			int n = Math.min(chunk.remaining(), length - offset);
+			chunk.put(data, offset, n);
+			offset += n;
+			if (!chunk.hasRemaining()) {
+				chunk.flip();
+				writeChunk("IDAT", chunk);
+				chunk.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the two byte header of a zlib stream compressed with deflate, using a 32K window, at the given
+	 * compression level.
+	 */
+	private static byte[] zlibHeader(int level) {
+		int cmf = 0x78;
+		int fLevel = level == Deflater.DEFAULT_COMPRESSION ? 2 : level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+		int flg = fLevel << 6;
+		flg += 31 - (cmf * 256 + flg) % 31; // Header check bits, the header must be a multiple of 31
+		return new byte[]{(byte) cmf, (byte) flg};
+	}
+
+	/**
+	 * Combines the Adler-32 checksums of two blocks of data into the checksum of both blocks one after the other.
+	 * Same as adler32_combine in zlib.
+	 *
+	 * @param adler1  Checksum of the first block
+	 * @param adler2  Checksum of the second block
+	 * @param length2 Length of the second block
+	 * @return Checksum of both blocks
+	 */
+	static long adler32Combine(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long rem = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (rem * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - rem;
+		if (sum1 >= base) sum1 -= base;
+		if (sum1 >= base) sum1 -= base;
+		if (sum2 >= base << 1) sum2 -= base << 1;
+		if (sum2 >= base) sum2 -= base;
+		return (sum2 << 16) | sum1;
+	}
+
+	/**
+	 * Converts a row of ARGB pixels into RGBA bytes, as stored in a PNG file.
+	 */
+	static void toRgba(int[] pixels, int offset, byte[] row) {
+		for (int i = 0, j = offset; i < row.length; i += 4, j++) {
+			int argb = pixels[j];
+			row[i] = (byte) (argb >> 16);
+			row[i + 1] = (byte) (argb >> 8);
+			row[i + 2] = (byte) argb;
+			row[i + 3] = (byte) (argb >>> 24);
+		}
+	}
+
+	/**
+	 * Writes a chunk to the file, with its length and CRC.
+	 *
+	 * @param type Four letter chunk type
+	 * @param data Chunk data, from its position to its limit
+	 */
+	private void writeChunk(String type, ByteBuffer data) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+		crc.reset();
+		crc.update(typeBytes, 0, 4);
+		crc.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+
+		ByteBuffer header = ByteBuffer.allocate(8);
+		header.putInt(data.remaining()).put(typeBytes).flip();
+		writeFully(header);
+		writeFully(data);
+
+		ByteBuffer footer = ByteBuffer.allocate(4);
+		footer.putInt((int) crc.getValue()).flip();
+		writeFully(footer);
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Compressed data of a strip of rows, which grows as the deflater outputs data.
+	 */
+	private static class Strip {
+		byte[] data;
+		int length, rows;
+		long adler, uncompressedLength;
+
+		Strip(int initialCapacity) {
+			data = new byte[initialCapacity];
+		}
+
+		/**
+		 * Runs the deflater once into the free space at the end of the data, growing it first if it is full.
+		 */
+		void deflate(Deflater deflater, int flush) {
+			if (length == data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			length += deflater.deflate(data, length, data.length - length, flush);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package iart.image;
+
+/**
+ * Applies PNG row filters to rows of 8 bit RGBA pixels. All five filters are tried on each row, and the one giving
+ * the smallest sum of absolute values (treating the filtered bytes as signed) is kept. The returned arrays are reused
+ * between calls, so an instance must not be shared between threads.
+ */
+class RowFilter {
+	private static final int bpp = 4; // Bytes per pixel
+
+	private static final int NONE = 0, SUB = 1, UP = 2, AVERAGE = 3, PAETH = 4;
+
+	private final byte[][] candidates = new byte[5][];
+
+	/**
+	 * Allocates the buffers needed to filter rows of the given length.
+	 *
+	 * @param rowBytes Number of bytes in each row, not including the filter type byte
+	 */
+	RowFilter(int rowBytes) {
+		for (int type = 0; type < candidates.length; type++) {
+			candidates[type] = new byte[rowBytes + 1];
+			candidates[type][0] = (byte) type;
+		}
+	}
+
+	/**
+	 * Filters a row.
+	 *
+	 * @param row     Row to filter
+	 * @param prevRow Row above it in the image, all zeroes for the first row
+	 * @return Filtered row, preceded by the filter type byte
+	 */
+	byte[] filter(byte[] row, byte[] prevRow) {
+		byte[] none = candidates[NONE], sub = candidates[SUB], up = candidates[UP], avg = candidates[AVERAGE],
+				paeth = candidates[PAETH];
+		long noneSum = 0, subSum = 0, upSum = 0, avgSum = 0, paethSum = 0;
+
+		for (int i = 0; i < row.length; i++) {
+			int x = row[i] & 0xFF;
+			int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+			int b = prevRow[i] & 0xFF;
+			int c = i >= bpp ? prevRow[i - bpp] & 0xFF : 0;
+
+			byte n = (byte) x, s = (byte) (x - a), u = (byte) (x - b), v = (byte) (x - ((a + b) >>> 1)),
+					p = (byte) (x - paethPredictor(a, b, c));
+			none[i + 1] = n;
+			sub[i + 1] = s;
+			up[i + 1] = u;
+			avg[i + 1] = v;
+			paeth[i + 1] = p;
+
+			noneSum += Math.abs(n);
+			subSum += Math.abs(s);
+			upSum += Math.abs(u);
+			avgSum += Math.abs(v);
+			paethSum += Math.abs(p);
+		}
+
+		int best = NONE;
+		long bestSum = noneSum;
+		if (subSum < bestSum) {
+			best = SUB;
+			bestSum = subSum;
+		}
+		if (upSum < bestSum) {
+			best = UP;
+			bestSum = upSum;
+		}
+		if (avgSum < bestSum) {
+			best = AVERAGE;
+			bestSum = avgSum;
+		}
+		if (paethSum < bestSum)
+			best = PAETH;
+		return candidates[best];
+	}
+
+	private static int paethPredictor(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc)
+			return a;
+		return pb <= pc ? b : c;
+	}
+}
@@ -0,0 +1,78 @@
+package iart.input;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base class for input sources, which keeps track of the listeners and delivers events to them, in the order they
+ * were added. A listener that throws an exception does not stop the event from being delivered to the rest of them.
+ * <p>
+ * Listeners such as the mouse and keyboard hooks are not thread safe, so subclasses must not fire events from more
+ * than one thread at a time.
+ */
+public abstract class AbstractInputSource implements InputSource {
+	private final CopyOnWriteArrayList<InputListener> listeners = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void addListener(InputListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	@Override
+	public void removeListener(InputListener listener) {
+		listeners.remove(listener);
+	}
+
+	protected void fireMouseMoved(int x, int y, long time) {
+		for (InputListener listener : listeners) {
+			try {
+				listener.mouseMoved(x, y, time);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, e);
+			}
+		}
+	}
+
+	protected void fireMousePressed(int button, long time) {
+		for (InputListener listener : listeners) {
+			try {
+				listener.mousePressed(button, time);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, e);
+			}
+		}
+	}
+
+	protected void fireMouseReleased(int button, long time) {
+		for (InputListener listener : listeners) {
+			try {
+				listener.mouseReleased(button, time);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, e);
+			}
+		}
+	}
+
+	protected void fireMouseWheelMoved(int rotation, long time) {
+		for (InputListener listener : listeners) {
+			try {
+				listener.mouseWheelMoved(rotation, time);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, e);
+			}
+		}
+	}
+
+	protected void fireKeyPressed(int column, int row, int keysInRow, int rows, long time) {
+		for (InputListener listener : listeners) {
+			try {
+				listener.keyPressed(column, row, keysInRow, rows, time);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, e);
+			}
+		}
+	}
+
+	private static void listenerFailed(InputListener listener, RuntimeException e) {
+		System.err.println("Error delivering input event to " + listener.getClass().getSimpleName() + ": " + e);
+	}
+}
@@ -0,0 +1,59 @@
+package iart.input;
+
+/**
+ * Receives the input events delivered by an InputSource. Events are passed as primitives, along with the time at
+ * which they happened in nanoseconds, as given by System.nanoTime() for live sources. Only differences between times
+ * are meaningful, and they always increase for events of the same source. Listeners only need to override the
+ * callbacks for the events they are interested in.
+ */
+public interface InputListener {
+	/**
+	 * Called when the pointer moves.
+	 *
+	 * @param x    X coordinate of the pointer, in screen pixels
+	 * @param y    Y coordinate of the pointer, in screen pixels
+	 * @param time Time of the event, in nanoseconds
+	 */
+	default void mouseMoved(int x, int y, long time) {
+	}
+
+	/**
+	 * Called when a mouse button is pressed.
+	 *
+	 * @param button Button pressed, 1 for the primary button
+	 * @param time   Time of the event, in nanoseconds
+	 */
+	default void mousePressed(int button, long time) {
+	}
+
+	/**
+	 * Called when a mouse button is released.
+	 *
+	 * @param button Button released, 1 for the primary button
+	 * @param time   Time of the event, in nanoseconds
+	 */
+	default void mouseReleased(int button, long time) {
+	}
+
+	/**
+	 * Called when the mouse wheel is turned.
+	 *
+	 * @param rotation Number of notches turned, negative when turned up or away from the user
+	 * @param time     Time of the event, in nanoseconds
+	 */
+	default void mouseWheelMoved(int rotation, long time) {
+	}
+
+	/**
+	 * Called when a key is pressed. Keys are identified by their position in the keyboard layout, rather than by their
+	 * key code, which is all that is needed to draw them.
+	 *
+	 * @param column    Column of the key in its row
+	 * @param row       Row of the key
+	 * @param keysInRow Number of keys in the row
+	 * @param rows      Number of rows in the layout
+	 * @param time      Time of the event, in nanoseconds
+	 */
+	default void keyPressed(int column, int row, int keysInRow, int rows, long time) {
+	}
+}
@@ -0,0 +1,22 @@
+package iart.input;
+
+/**
+ * Delivers input events to listeners. The drawing pipeline only depends on this interface, so it can be driven by
+ * the native hook on a desktop, or by a recorded journal, a synthetic generator or a socket on a headless machine.
+ */
+public interface InputSource {
+	/**
+	 * Adds a listener, which will receive all events delivered from then on. Safe to call from any thread.
+	 *
+	 * @param listener Listener to add
+	 */
+	void addListener(InputListener listener);
+
+	/**
+	 * Removes a listener, which will not receive any more events once this method returns. Safe to call from any
+	 * thread.
+	 *
+	 * @param listener Listener to remove
+	 */
+	void removeListener(InputListener listener);
+}
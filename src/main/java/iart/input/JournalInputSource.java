@@ -0,0 +1,74 @@
+package iart.input;
+
+import iart.recorder.InputJournal;
+import iart.recorder.InputJournalReader;
+
+import java.util.function.Consumer;
+
+/**
+ * Input source that replays the events recorded in an input journal. Events are delivered one record at a time, on
+ * the thread calling next(), as fast as they are asked for, with the times they were recorded at, measured from the
+ * start of the journal.
+ */
+public class JournalInputSource extends AbstractInputSource {
+	private final InputJournalReader journal;
+	private Consumer<Boolean> pauseListener = paused -> {
+	};
+
+	/**
+	 * Prepares to replay a journal from its current record.
+	 *
+	 * @param journal Journal to replay
+	 */
+	public JournalInputSource(InputJournalReader journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Sets a listener that is told when the recording was paused (true) or resumed (false), which are recorded in the
+	 * journal too, but are not input events.
+	 *
+	 * @param pauseListener Listener to notify
+	 */
+	public void setPauseListener(Consumer<Boolean> pauseListener) {
+		this.pauseListener = pauseListener;
+	}
+
+	/**
+	 * Reads the next record of the journal, and delivers it to the listeners.
+	 *
+	 * @return True if a record was replayed, false if the end of the journal was reached
+	 */
+	public boolean next() {
+		if (!journal.next())
+			return false;
+
+		long time = journal.getTime();
+		switch (journal.getType()) {
+			case InputJournal.POINTER_ORIGIN:
+			case InputJournal.MOUSE_MOVE:
+				fireMouseMoved(journal.getX(), journal.getY(), time);
+				break;
+			case InputJournal.MOUSE_PRESS:
+				fireMousePressed(journal.getButton(), time);
+				break;
+			case InputJournal.MOUSE_RELEASE:
+				fireMouseReleased(journal.getButton(), time);
+				break;
+			case InputJournal.MOUSE_WHEEL:
+				fireMouseWheelMoved(journal.getWheelRotation(), time);
+				break;
+			case InputJournal.KEY_PRESS:
+				fireKeyPressed(journal.getKeyColumn(), journal.getKeyRow(), journal.getKeysInRow(),
+							   journal.getKeyRows(), time);
+				break;
+			case InputJournal.PAUSE:
+				pauseListener.accept(true);
+				break;
+			case InputJournal.RESUME:
+				pauseListener.accept(false);
+				break;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,123 @@
+package iart.input;
+
+import iart.Main;
+import iart.listeners.keyboard.KeyMap;
+import org.jnativehook.GlobalScreen;
+import org.jnativehook.NativeHookException;
+import org.jnativehook.keyboard.NativeKeyEvent;
+import org.jnativehook.keyboard.NativeKeyListener;
+import org.jnativehook.mouse.NativeMouseEvent;
+import org.jnativehook.mouse.NativeMouseInputListener;
+import org.jnativehook.mouse.NativeMouseWheelEvent;
+import org.jnativehook.mouse.NativeMouseWheelListener;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Input source for the real mouse and keyboard, through jnativehook's global hook. Keys are translated to their
+ * position in the keyboard layout entered by the user, keys that are not in the layout are ignored.
+ */
+public class NativeInputSource extends AbstractInputSource
+		implements NativeMouseInputListener, NativeMouseWheelListener, NativeKeyListener {
+	private volatile KeyMap keyMap;
+
+	/**
+	 * Registers the native hook, and starts delivering the events it reports.
+	 */
+	public void start() {
+		Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
+		logger.setLevel(Level.OFF);
+		logger.setUseParentHandlers(false);
+
+		try {
+			GlobalScreen.registerNativeHook();
+		} catch (NativeHookException e) {
+			e.printStackTrace();
+		}
+
+		GlobalScreen.addNativeMouseListener(this);
+		GlobalScreen.addNativeMouseMotionListener(this);
+		GlobalScreen.addNativeMouseWheelListener(this);
+		GlobalScreen.addNativeKeyListener(this);
+	}
+
+	/**
+	 * Stops delivering events, and unregisters the native hook.
+	 */
+	public void stop() {
+		GlobalScreen.removeNativeMouseListener(this);
+		GlobalScreen.removeNativeMouseMotionListener(this);
+		GlobalScreen.removeNativeMouseWheelListener(this);
+		GlobalScreen.removeNativeKeyListener(this);
+
+		try {
+			GlobalScreen.unregisterNativeHook();
+		} catch (NativeHookException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads the keyboard layout entered by the user, which key presses are translated with. Should be called every
+	 * time the layout may have changed, such as before starting a recording.
+	 */
+	public void loadKeyboardLayout() {
+		try {
+			keyMap = KeyMap.load(Paths.get(Main.keysFileLoc));
+		} catch (IOException e) {
+			System.out.println("Keyboard layout not found at: \"" + Main.keysFileLoc + "\" (" + e.getMessage() + ")");
+			keyMap = null;
+		}
+	}
+
+	@Override
+	public void nativeMouseMoved(NativeMouseEvent nativeMouseEvent) {
+		fireMouseMoved(nativeMouseEvent.getX(), nativeMouseEvent.getY(), System.nanoTime());
+	}
+
+	@Override
+	public void nativeMouseDragged(NativeMouseEvent nativeMouseEvent) {
+	}
+
+	@Override
+	public void nativeMouseClicked(NativeMouseEvent nativeMouseEvent) {
+	}
+
+	@Override
+	public void nativeMousePressed(NativeMouseEvent nativeMouseEvent) {
+		fireMousePressed(nativeMouseEvent.getButton(), System.nanoTime());
+	}
+
+	@Override
+	public void nativeMouseReleased(NativeMouseEvent nativeMouseEvent) {
+		fireMouseReleased(nativeMouseEvent.getButton(), System.nanoTime());
+	}
+
+	@Override
+	public void nativeMouseWheelMoved(NativeMouseWheelEvent nativeMouseWheelEvent) {
+		fireMouseWheelMoved(nativeMouseWheelEvent.getWheelRotation(), System.nanoTime());
+	}
+
+	@Override
+	public void nativeKeyPressed(NativeKeyEvent nativeKeyEvent) {
+		KeyMap keyMap = this.keyMap;
+		if (keyMap == null)
+			return;
+
+		int keyCode = nativeKeyEvent.getKeyCode(), row = keyMap.getRow(keyCode);
+		if (row >= 0)
+			fireKeyPressed(keyMap.getColumn(keyCode), row, keyMap.getRowWidth(row), keyMap.getRows(),
+						   System.nanoTime());
+	}
+
+	@Override
+	public void nativeKeyReleased(NativeKeyEvent nativeKeyEvent) {
+	}
+
+	@Override
+	public void nativeKeyTyped(NativeKeyEvent nativeKeyEvent) {
+	}
+}
@@ -0,0 +1,110 @@
+package iart.input;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Input source that reads events from connections to a local TCP port, so the drawing pipeline can be driven by
+ * other programs or scripts. Only connections from the local machine are accepted. Each connection sends one event
+ * per line, as a word followed by its arguments, separated by spaces:
+ * <pre>
+ * move x y
+ * press button
+ * release button
+ * wheel rotation
+ * key column row keysInRow rows
+ * </pre>
+ * Events are timestamped when they are received. Malformed lines are ignored. Each connection is read on a thread of
+ * its own, but events are delivered to the listeners one at a time, in the order they are received.
+ */
+public class SocketInputSource extends AbstractInputSource implements Closeable {
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Starts listening for connections on a port of the loopback interface.
+	 *
+	 * @param port Port to listen on, or 0 to pick a free one
+	 * @throws IOException If the port could not be listened on
+	 */
+	public SocketInputSource(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 4, InetAddress.getLoopbackAddress());
+
+		Thread acceptor = new Thread(this::acceptConnections, "iArt input socket");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections. Connections already open are read until they are closed by the other end.
+	 *
+	 * @throws IOException If the socket could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void acceptConnections() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread reader = new Thread(() -> readEvents(socket), "iArt input socket reader");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException ignored) {
+				// Socket closed
+			}
+		}
+	}
+
+	private void readEvents(Socket socket) {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+																		   StandardCharsets.US_ASCII))) {
+			for (String line; (line = in.readLine()) != null; ) {
+				try {
+					dispatch(line.trim().split("\\s+"));
+				} catch (RuntimeException ignored) {
+					// Malformed line
+				}
+			}
+		} catch (IOException ignored) {
+			// Connection lost
+		}
+	}
+
+	/**
+	 * Delivers the event on a line. Synchronized, since the listeners are not thread safe, and the readers of different
+	 * connections call it at the same time.
+	 */
+	private synchronized void dispatch(String[] words) {
+		long time = System.nanoTime();
+		switch (words[0]) {
+			case "move":
+				fireMouseMoved(Integer.parseInt(words[1]), Integer.parseInt(words[2]), time);
+				break;
+			case "press":
+				fireMousePressed(Integer.parseInt(words[1]), time);
+				break;
+			case "release":
+				fireMouseReleased(Integer.parseInt(words[1]), time);
+				break;
+			case "wheel":
+				fireMouseWheelMoved(Integer.parseInt(words[1]), time);
+				break;
+			case "key":
+				fireKeyPressed(Integer.parseInt(words[1]), Integer.parseInt(words[2]), Integer.parseInt(words[3]),
+							   Integer.parseInt(words[4]), time);
+				break;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package iart.input;
+
+import java.util.Random;
+
+/**
+ * Input source that generates a plausible stream of input events from a seed, so the drawing pipeline can be
+ * benchmarked and load tested without a desktop. The same seed always generates the same events, with the same
+ * times. The pointer wanders around the screen, and every so often the mouse is clicked, a key is pressed, the wheel
+ * is turned, or the pointer rests for a few seconds.
+ */
+public class SyntheticInputSource extends AbstractInputSource {
+	private static final int[] rowWidths = {14, 14, 13, 12, 8}; // Keys in each row of the simulated keyboard
+	private static final long moveInterval = 8_000_000; // Time between mouse moves, 8 ms
+	private static final long restTime = 4_000_000_000L; // Time the pointer rests for, long enough to draw circles
+
+	private final Random rand;
+	private final int screenWidth, screenHeight;
+
+	private int x, y;
+	private long time;
+	private int pressedButton;
+
+	/**
+	 * Prepares to generate events for a screen of the given size, starting with the pointer in its centre.
+	 *
+	 * @param seed         Seed from which to generate the events
+	 * @param screenWidth  Width of the screen, in pixels
+	 * @param screenHeight Height of the screen, in pixels
+	 */
+	public SyntheticInputSource(long seed, int screenWidth, int screenHeight) {
+		rand = new Random(seed);
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		x = screenWidth / 2;
+		y = screenHeight / 2;
+	}
+
+	/**
+	 * Generates an event, and delivers it to the listeners on the calling thread.
+	 */
+	public void next() {
+		time += moveInterval;
+		if (pressedButton != 0) {
+			fireMouseReleased(pressedButton, time);
+			pressedButton = 0;
+			return;
+		}
+
+		int action = rand.nextInt(1000);
+		if (action < 20) {
+			pressedButton = 1;
+			fireMousePressed(pressedButton, time);
+		} else if (action < 40) {
+			int row = rand.nextInt(rowWidths.length);
+			fireKeyPressed(rand.nextInt(rowWidths[row]), row, rowWidths[row], rowWidths.length, time);
+		} else if (action < 45) {
+			fireMouseWheelMoved(rand.nextBoolean() ? 1 : -1, time);
+		} else {
+			if (action < 47)
+				time += restTime;
+			x = Math.max(0, Math.min(screenWidth - 1, x + rand.nextInt(41) - 20));
+			y = Math.max(0, Math.min(screenHeight - 1, y + rand.nextInt(41) - 20));
+			fireMouseMoved(x, y, time);
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package iart.listeners.keyboard;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keyboard layout entered by the user, compiled into flat arrays indexed by key code, so translating a keystroke to
+ * its position in the layout is two array reads, with no boxing or hashing.
+ * <p>
+ * The layout is stored in a small binary file, which is read in one go:
+ * <pre>
+ * int magic, int version
+ * int rows, then the number of keys in each row, one int per row
+ * int keys, then the key code, row and column of each key, one int each
+ * </pre>
+ * Layouts used to be stored by serializing the KeyboardLayout that recorded them. Such files are still read, and are
+ * rewritten in the binary format the first time they are loaded.
+ */
+public final class KeyMap {
+	static final int MAGIC = 0x694b6579; // "iKey"
+	static final int VERSION = 1;
+	static final int maxKeyCode = 0xFFFF; // Native key codes are 16 bit
+
+	private static final short serializationMagic = (short) 0xaced; // First bytes of a Java serialization stream
+	// Only classes a serialized KeyboardLayout is made of are deserialized
+	private static final Set<String> serializedClasses = new HashSet<>(Arrays.asList(
+			KeyboardLayout.class.getName(), "java.util.HashMap", "java.util.ArrayList", "java.lang.Integer",
+			"java.lang.Number", "java.awt.Point", "java.awt.geom.Point2D"));
+
+	private final int[] cells; // Row in the high half and column in the low half, indexed by key code, -1 if not mapped
+	private final int[] rowWidths;
+
+	/**
+	 * Compiles a layout from the positions of its keys.
+	 *
+	 * @param keyCodes  Key code of each key
+	 * @param rows      Row of each key
+	 * @param columns   Column of each key
+	 * @param rowWidths Number of keys in each row
+	 * @throws IllegalArgumentException If a key is outside of the rows, or its key code is not between 0 and 65535
+	 */
+	public KeyMap(int[] keyCodes, int[] rows, int[] columns, int[] rowWidths) {
+		int highestKeyCode = -1;
+		for (int keyCode : keyCodes) {
+			if (keyCode < 0 || keyCode > maxKeyCode)
+				throw new IllegalArgumentException("Key code " + keyCode + " is out of range");
+			highestKeyCode = Math.max(highestKeyCode, keyCode);
+		}
+
+		cells = new int[highestKeyCode + 1];
+		Arrays.fill(cells, -1);
+		for (int i = 0; i < keyCodes.length; i++) {
+			if (rows[i] < 0 || rows[i] >= rowWidths.length || columns[i] < 0 || columns[i] > 0xFFFF)
+				throw new IllegalArgumentException("Key " + keyCodes[i] + " is outside of the layout");
+			cells[keyCodes[i]] = rows[i] << 16 | columns[i];
+		}
+		this.rowWidths = rowWidths.clone();
+	}
+
+	/**
+	 * Returns the row a key is in.
+	 *
+	 * @param keyCode Native key code of the key
+	 * @return Row of the key, from the top, or -1 if the key is not in the layout
+	 */
+	public int getRow(int keyCode) {
+		return keyCode >= 0 && keyCode < cells.length ? cells[keyCode] >> 16 : -1;
+	}
+
+	/**
+	 * Returns the column a key is in. The key must be in the layout.
+	 *
+	 * @param keyCode Native key code of the key
+	 * @return Column of the key within its row, from the left
+	 */
+	public int getColumn(int keyCode) {
+		return cells[keyCode] & 0xFFFF;
+	}
+
+	/**
+	 * Returns the number of keys in a row.
+	 *
+	 * @param row Row, from the top
+	 * @return Number of keys in the row
+	 */
+	public int getRowWidth(int row) {
+		return rowWidths[row];
+	}
+
+	public int getRows() {
+		return rowWidths.length;
+	}
+
+	/**
+	 * Writes the layout to a file, in the binary format. The file is written next to the destination first, and then
+	 * moved into place, so a layout is never left half written.
+	 *
+	 * @param file File to write the layout to
+	 * @throws IOException If the file could not be written
+	 */
+	public void save(Path file) throws IOException {
+		int keys = 0;
+		for (int cell : cells)
+			if (cell >= 0)
+				keys++;
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (4 + rowWidths.length + keys * 3));
+		buffer.putInt(MAGIC).putInt(VERSION);
+		buffer.putInt(rowWidths.length);
+		for (int width : rowWidths)
+			buffer.putInt(width);
+		buffer.putInt(keys);
+		for (int keyCode = 0; keyCode < cells.length; keyCode++)
+			if (cells[keyCode] >= 0)
+				buffer.putInt(keyCode).putInt(cells[keyCode] >> 16).putInt(cells[keyCode] & 0xFFFF);
+
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, buffer.array());
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Loads a layout from a file. Layouts stored by older versions are converted, and the file is rewritten in the
+	 * binary format.
+	 *
+	 * @param file File holding the layout
+	 * @return Layout stored in the file
+	 * @throws IOException If the file could not be read, or does not hold a keyboard layout
+	 */
+	public static KeyMap load(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.remaining() >= 2 && buffer.getShort(0) == serializationMagic) {
+			KeyMap keyMap = readSerialized(buffer.array());
+			try {
+				keyMap.save(file);
+			} catch (IOException e) {
+				System.err.println("Error converting the keyboard layout file, it will be converted next time...");
+			}
+			return keyMap;
+		}
+
+		try {
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("Not an iArt keyboard layout: " + file);
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported keyboard layout version " + version + ": " + file);
+
+			// Counts are checked against what is left of the file before allocating anything for them
+			int rowCount = buffer.getInt();
+			if (rowCount < 0 || rowCount > buffer.remaining() / 4)
+				throw new IOException("Invalid number of rows " + rowCount + " in keyboard layout: " + file);
+			int[] rowWidths = new int[rowCount];
+			for (int row = 0; row < rowWidths.length; row++)
+				rowWidths[row] = buffer.getInt();
+			int keys = buffer.getInt();
+			if (keys < 0 || keys > buffer.remaining() / 12)
+				throw new IOException("Invalid number of keys " + keys + " in keyboard layout: " + file);
+			int[] keyCodes = new int[keys], rows = new int[keys], columns = new int[keys];
+			for (int i = 0; i < keys; i++) {
+				keyCodes[i] = buffer.getInt();
+				rows[i] = buffer.getInt();
+				columns[i] = buffer.getInt();
+			}
+			return new KeyMap(keyCodes, rows, columns, rowWidths);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated keyboard layout: " + file);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid keyboard layout: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a layout stored by serializing a KeyboardLayout. The serialVersionUID in the file is ignored, since the
+	 * class never declared one, and it changed whenever the methods of the class did, while its fields did not.
+	 */
+	private static KeyMap readSerialized(byte[] bytes) throws IOException {
+		KeyboardLayout layout;
+		try (ObjectInputStream in = new LegacyLayoutInputStream(new ByteArrayInputStream(bytes))) {
+			layout = (KeyboardLayout) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new InvalidClassException("Not an iArt keyboard layout: " + e.getMessage());
+		}
+		try {
+			return layout.toKeyMap();
+		} catch (IllegalArgumentException | NegativeArraySizeException | IndexOutOfBoundsException e) {
+			throw new IOException("Invalid keyboard layout: " + e.getMessage());
+		}
+	}
+
+	private static final class LegacyLayoutInputStream extends ObjectInputStream {
+		private LegacyLayoutInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			if (!serializedClasses.contains(descriptor.getName()))
+				throw new InvalidClassException(descriptor.getName(), "Unexpected class in keyboard layout");
+			return super.resolveClass(descriptor);
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			ObjectStreamClass descriptor = super.readClassDescriptor();
+			if (descriptor.getName().equals(KeyboardLayout.class.getName()))
+				return ObjectStreamClass.lookup(KeyboardLayout.class);
+			return descriptor;
+		}
+	}
+}
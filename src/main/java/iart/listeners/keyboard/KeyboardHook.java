@@ -1,73 +1,60 @@
 package iart.listeners.keyboard;
 
+import iart.input.InputListener;
+import iart.metrics.Metrics;
 import iart.recorder.Recorder;
-import iart.draw.Drawer;
-import iart.Main;
+import iart.recorder.SessionClock;
+import iart.recorder.SessionRandom;
+import iart.draw.DrawCommandBuffer;
+import iart.draw.DrawEvent;
 import iart.recorder.State;
-import javafx.application.Platform;
-import org.jnativehook.GlobalScreen;
-import org.jnativehook.keyboard.NativeKeyEvent;
-import org.jnativehook.keyboard.NativeKeyListener;
 
-import java.awt.*;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Listens for keyboard events and triggers draw events to create a visual representation of the users keyboard use.
  */
-public class KeyboardHook implements NativeKeyListener {
-	private Drawer drawer;
-
-	private KeyboardLayout layout;
-	private Random rand = new Random();
+public class KeyboardHook implements InputListener {
+	private DrawCommandBuffer commands;
 
 	private double screenWidth, screenHeight;
 
 	private int squareMaxWidth; // Max size that a square drawn by a keystroke can be
 
 	/**
-	 * Sets up the keyboard listener and registers it as a global listener. Once this constructor returns, the keyboard
-	 * listener is fully operational, and will start processing keystrokes immediately.
+	 * Sets up the keyboard listener. It must be added to an InputSource to start processing keystrokes.
 	 *
-	 * @param drawer       Drawer instance to draw with
+	 * @param commands     Buffer into which to add the commands that draw the keystrokes
 	 * @param screenWidth  Width of the screen(s) in pixels
 	 * @param screenHeight Height of the screen(s) in pixels
 	 */
-	public KeyboardHook(Drawer drawer, double screenWidth, double screenHeight) {
-		this.drawer = drawer;
+	public KeyboardHook(DrawCommandBuffer commands, double screenWidth, double screenHeight) {
+		this.commands = commands;
 		this.screenWidth = screenWidth;
 		this.screenHeight = screenHeight;
 
 		squareMaxWidth = (int) (screenWidth > screenHeight ? screenWidth : screenHeight) / 100;
-
-		layout = KeyboardLayout.loadKeyboardLayout(Main.keysFileLoc);
-		GlobalScreen.addNativeKeyListener(this);
-	}
-
-	@Override
-	public void nativeKeyPressed(NativeKeyEvent nativeKeyEvent) {
-		if (Recorder.state == State.RECORDING) {
-			Point keyPos = layout.getLayout().get(nativeKeyEvent.getKeyCode());
-
-			if (keyPos != null) {
-				int keysInRow = layout.getRowWidths().get(keyPos.y);
-				int topLeftX = (int) (screenWidth / keysInRow) * keyPos.x;
-				int topLeftY = (int) (screenHeight / layout.getNumOfRows()) * keyPos.y;
-				int drawPosX = topLeftX + rand.nextInt((int) (screenWidth / keysInRow) - squareMaxWidth);
-				int drawPosY = topLeftY + rand.nextInt((int) (screenHeight / layout.getNumOfRows()) - squareMaxWidth);
-
-				Platform.runLater(() -> drawer.drawSquare(
-						new Point(drawPosX, drawPosY), rand.nextInt(squareMaxWidth - 10) + 10)
-				);
-			}
-		}
-	}
-
-	@Override
-	public void nativeKeyReleased(NativeKeyEvent nativeKeyEvent) {
 	}
 
+	/**
+	 * Draws a square at a random position within the area of the screen matching the position of a key in the
+	 * keyboard layout. The screen is split into as many rows as the layout has, and each row into as many columns as
+	 * there are keys in the row.
+	 */
 	@Override
-	public void nativeKeyTyped(NativeKeyEvent nativeKeyEvent) {
+	public void keyPressed(int column, int row, int keysInRow, int rows, long time) {
+		SessionClock.advance(time);
+		Metrics.eventReceived();
+		long received = Metrics.now();
+		if (Recorder.state != State.RECORDING)
+			return;
+
+		SplittableRandom rand = SessionRandom.current();
+		int topLeftX = (int) (screenWidth / keysInRow) * column;
+		int topLeftY = (int) (screenHeight / rows) * row;
+		int drawPosX = topLeftX + rand.nextInt((int) (screenWidth / keysInRow) - squareMaxWidth);
+		int drawPosY = topLeftY + rand.nextInt((int) (screenHeight / rows) - squareMaxWidth);
+
+		commands.offer(DrawEvent.KEYSTROKE, drawPosX, drawPosY, rand.nextInt(squareMaxWidth - 10) + 10, 0, received);
 	}
 }
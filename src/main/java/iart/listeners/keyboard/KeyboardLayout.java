@@ -7,13 +7,17 @@ import org.jnativehook.keyboard.NativeKeyEvent;
 import org.jnativehook.keyboard.NativeKeyListener;
 
 import java.awt.*;
-import java.io.*;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Controls the backend portion of the keyboard layout setup. Since the layout can not be determined automagically, the
- * user has to enter it once, so it can be saved a reused.
+ * user has to enter it once, so it can be saved a reused. Once entered, the layout is compiled into a KeyMap, which is
+ * what is saved. The class is still Serializable so layouts saved by older versions can be read and converted.
  */
 public class KeyboardLayout extends Thread implements NativeKeyListener, Serializable {
 	private transient KeyboardLayoutUI layoutUI;
@@ -52,10 +56,7 @@ public class KeyboardLayout extends Thread implements NativeKeyListener, Seriali
 		}
 
 		try {
-			FileOutputStream fos = new FileOutputStream(Main.keysFileLoc);
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
-			oos.writeObject(this);
-			fos.close();
+			toKeyMap().save(Paths.get(Main.keysFileLoc));
 		} catch (IOException e) {
 			System.err.println("Error writing the keyboard layout to a file...");
 		}
@@ -65,49 +66,23 @@ public class KeyboardLayout extends Thread implements NativeKeyListener, Seriali
 	}
 
 	/**
-	 * Returns the hashmap containing the mappings of keycodes to the positions of the keys with respect to each other.
+	 * Compiles the layout entered into a KeyMap.
 	 *
-	 * @return Keyboard layout hashmap
+	 * @return Layout indexed by key code
 	 */
-	HashMap<Integer, Point> getLayout() {
-		return layout;
-	}
-
-	/**
-	 * Returns the ArrayList containing the widths of each of the rows that form the keyboard layout.
-	 *
-	 * @return ArrayList containing the widths of the rows in the layout
-	 */
-	ArrayList<Integer> getRowWidths() {
-		return rowWidths;
-	}
-
-	/**
-	 * Returns the number of rows in the layout.
-	 *
-	 * @return Integer representation of the number of rows in the layout
-	 */
-	int getNumOfRows() {
-		return numOfRows;
-	}
-
-	/**
-	 * Loads a KeyboardLayout from a file. This file must have been previously written by this class for proper
-	 * loading.
-	 *
-	 * @param layoutLoc Path to the file containing the serialized KeyboardLayout
-	 * @return KeyboardLayout instance with the previously entered layout
-	 */
-	static KeyboardLayout loadKeyboardLayout(String layoutLoc) {
-		try {
-			FileInputStream fis = new FileInputStream(layoutLoc);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			return (KeyboardLayout) ois.readObject();
-		} catch (IOException | ClassNotFoundException ignored) {
+	KeyMap toKeyMap() {
+		int[] keyCodes = new int[layout.size()], rows = new int[layout.size()], columns = new int[layout.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Point> key : layout.entrySet()) {
+			keyCodes[i] = key.getKey();
+			rows[i] = key.getValue().y;
+			columns[i++] = key.getValue().x;
 		}
 
-		System.out.println("Keyboard layout not found at: \"" + layoutLoc + "\"");
-		return null;
+		int[] widths = new int[numOfRows];
+		for (int row = 0; row < numOfRows; row++)
+			widths[row] = rowWidths.get(row);
+		return new KeyMap(keyCodes, rows, columns, widths);
 	}
 
 	@Override
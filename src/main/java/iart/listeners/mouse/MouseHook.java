@@ -1,91 +1,86 @@
 package iart.listeners.mouse;
 
+import iart.input.InputListener;
 import iart.recorder.Recorder;
+import iart.recorder.SessionClock;
+import iart.recorder.SessionRandom;
+import iart.draw.DrawCommandBuffer;
 import iart.draw.DrawEvent;
-import iart.draw.Drawer;
 import iart.Main;
+import iart.metrics.Metrics;
 import iart.recorder.State;
-import javafx.application.Platform;
-import org.jnativehook.GlobalScreen;
-import org.jnativehook.mouse.NativeMouseEvent;
-import org.jnativehook.mouse.NativeMouseInputListener;
-
-import java.awt.*;
-import java.util.Random;
 
 /**
  * Listens for mouse events and triggers draw events to create a visual representation of the users mouse movements
  * and clicks.
  */
-public class MouseHook implements NativeMouseInputListener {
-	private Drawer drawer;
+public class MouseHook implements InputListener {
+	private DrawCommandBuffer commands;
 
-	private Random rand = new Random();
-	private Point prevLocation;
+	private boolean locationKnown; // False until the first mouse move, which gives the initial pointer location
+	private int prevX, prevY;
 	private long lastMove;
 	private boolean mousePressed;
 
 	private int mPressCircleRad;
 
+	private long received; // Time the event being handled was received, only known when metrics are enabled
+
 	/**
-	 * Sets up the mouse listener and registers it as a global listener. Once this constructor returns, the mouse
-	 * listener is fully operational, and will start processing mouse movement/click events immediately.
+	 * Sets up the mouse listener. It must be added to an InputSource to start processing mouse movement/click events.
 	 *
-	 * @param drawer       Drawer instance to draw the lines and mouse clicks with
+	 * @param commands     Buffer into which to add the commands that draw the lines and mouse clicks
 	 * @param screenWidth  Width of the screen(s) in pixels
 	 * @param screenHeight Height of the screen(s) in pixels
+	 * @param startTime    Time at which the recording started, in nanoseconds, in the same time base as the events
 	 */
-	public MouseHook(Drawer drawer, double screenWidth, double screenHeight) {
-		this.drawer = drawer;
+	public MouseHook(DrawCommandBuffer commands, double screenWidth, double screenHeight, long startTime) {
+		this.commands = commands;
 		mPressCircleRad = (int) (screenWidth > screenHeight ? screenWidth : screenHeight) / 50;
-
-		prevLocation = MouseInfo.getPointerInfo().getLocation();
-		lastMove = System.currentTimeMillis();
-
-		GlobalScreen.addNativeMouseListener(this);
-		GlobalScreen.addNativeMouseMotionListener(this);
-	}
-
-	@Override
-	public void nativeMouseClicked(NativeMouseEvent nativeMouseEvent) {
+		lastMove = startTime;
 	}
 
+	/**
+	 * Draws a circle where the pointer is, unless a button is already being held down.
+	 */
 	@Override
-	public void nativeMousePressed(NativeMouseEvent nativeMouseEvent) {
-		if (mousePressed)
+	public void mousePressed(int button, long time) {
+		received(time);
+		if (mousePressed || !locationKnown)
 			return;
 		mousePressed = true;
-		drawCircle(DrawEvent.LMOUSE_PRESS, prevLocation, rand.nextInt(mPressCircleRad) + 5);
+		drawCircle(DrawEvent.LMOUSE_PRESS, prevX, prevY, SessionRandom.current().nextInt(mPressCircleRad) + 5);
 	}
 
 	@Override
-	public void nativeMouseReleased(NativeMouseEvent nativeMouseEvent) {
+	public void mouseReleased(int button, long time) {
+		received(time);
 		mousePressed = false;
 	}
 
+	/**
+	 * If the mouse has moved, draw a line between previous position and current position.
+	 * If the mouse was stopped for longer than three seconds, draw a circle with a radius proportional to the
+	 * cube root of the time elapsed until the mouse was moved again.
+	 */
 	@Override
-	public void nativeMouseMoved(NativeMouseEvent nativeMouseEvent) {
-		Point location = nativeMouseEvent.getPoint();
-		System.out.println(location);
+	public void mouseMoved(int x, int y, long time) {
+		received(time);
 		long diff;
-
-		/*
-		 * If the mouse has moved, draw a line between previous position and current position.
-		 * If the mouse was stopped for longer than three seconds, draw a circle with a radius proportional to the
-		 * cube root of the time elapsed until the mouse was moved again.
-		 */
-		if (Recorder.state == State.RECORDING) {
-			if (!prevLocation.equals(location)) {
-				if ((diff = System.currentTimeMillis() - lastMove) > 3000) {
-					double radius = getMouseMoveRadius(diff / 1000d);
-					drawCircle(DrawEvent.MOVE_OUTER_CIRCLE, location, radius);
-					drawCircle(DrawEvent.MOVE_INNER_CIRCLE, location, radius / 10);
+		if (Recorder.state == State.RECORDING && locationKnown) {
+			if (x != prevX || y != prevY) {
+				if ((diff = time - lastMove) > 3_000_000_000L) {
+					double radius = getMouseMoveRadius(diff / 1_000_000_000d);
+					drawCircle(DrawEvent.MOVE_OUTER_CIRCLE, x, y, radius);
+					drawCircle(DrawEvent.MOVE_INNER_CIRCLE, x, y, radius / 10);
 				}
-				lastMove = System.currentTimeMillis();
-				drawLine(prevLocation, location);
+				lastMove = time;
+				drawLine(prevX, prevY, x, y);
 			}
 		}
-		prevLocation = location;
+		locationKnown = true;
+		prevX = x;
+		prevY = y;
 	}
 
 	/**
@@ -102,15 +97,17 @@ public class MouseHook implements NativeMouseInputListener {
 			   (1d + 35d * Math.exp(-0.001d * diffSecs)) - 15d;
 	}
 
-	@Override
-	public void nativeMouseDragged(NativeMouseEvent nativeMouseEvent) {
+	private void received(long time) {
+		SessionClock.advance(time);
+		Metrics.eventReceived();
+		received = Metrics.now();
 	}
 
-	private void drawLine(Point start, Point end) {
-		Platform.runLater(() -> drawer.drawLine(start, end));
+	private void drawLine(int startX, int startY, int endX, int endY) {
+		commands.offer(DrawEvent.MOUSE_MOVE, startX, startY, endX, endY, received);
 	}
 
-	private void drawCircle(DrawEvent drawEvent, Point center, double radius) {
-		Platform.runLater(() -> drawer.drawCircle(drawEvent, center, radius * Recorder.resMultiplier));
+	private void drawCircle(DrawEvent drawEvent, int centerX, int centerY, double radius) {
+		commands.offer(drawEvent, centerX, centerY, radius * Recorder.resMultiplier, 0, received);
 	}
 }
@@ -0,0 +1,120 @@
+package iart.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of times, in nanoseconds, which any number of threads can record into at the same time without locks.
+ * <p>
+ * Each power of two is split into eight buckets of the same width, so every time is counted in a bucket at most 12.5%
+ * wider than the time itself, whatever its magnitude, and percentiles are reported with that precision. Counting a time
+ * only takes an increment of its bucket, and of the totals, so recording is cheap enough to do for every input event.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	private static final int subBucketBits = 3, subBuckets = 1 << subBucketBits;
+	private static final int bucketCount = (64 - subBucketBits) * subBuckets;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+	private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+	/**
+	 * Counts a time. Negative times, which a clock going backwards could produce, are counted as 0.
+	 *
+	 * @param nanos Time to count, in nanoseconds
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		if (nanos > max.get())
+			max.accumulateAndGet(nanos, Math::max);
+	}
+
+	private static int bucketOf(long nanos) {
+		if (nanos < subBuckets)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - subBucketBits)) & (subBuckets - 1);
+		return (exponent - subBucketBits + 1) * subBuckets + subBucket;
+	}
+
+	/**
+	 * Returns the largest time counted in a bucket.
+	 */
+	private static long upperBoundOf(int bucket) {
+		if (bucket < subBuckets)
+			return bucket;
+		int shift = bucket / subBuckets - 1;
+		return ((long) (subBuckets + bucket % subBuckets + 1) << shift) - 1;
+	}
+
+	/**
+	 * Returns the time below which the given fraction of the times counted fall, rounded up to the end of the bucket
+	 * it was counted in. While other threads are recording, the result may be off by the times they are counting.
+	 *
+	 * @param fraction Fraction of the times, from 0 to 1
+	 * @return Time in nanoseconds, or 0 if nothing has been counted
+	 */
+	public long getPercentile(double fraction) {
+		long counted = 0;
+		for (int i = 0; i < bucketCount; i++)
+			counted += buckets.get(i);
+		if (counted == 0)
+			return 0;
+
+		long rank = Math.max((long) Math.ceil(fraction * counted), 1);
+		long seen = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long counted = count.get();
+		return counted == 0 ? 0 : total.get() / (double) counted / 1e6;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return max.get() / 1e6;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return getPercentile(0.5) / 1e6;
+	}
+
+	@Override
+	public double getP90Millis() {
+		return getPercentile(0.9) / 1e6;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return getPercentile(0.99) / 1e6;
+	}
+
+	@Override
+	public double getP999Millis() {
+		return getPercentile(0.999) / 1e6;
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < bucketCount; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
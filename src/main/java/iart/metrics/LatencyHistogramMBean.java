@@ -0,0 +1,25 @@
+package iart.metrics;
+
+/**
+ * Management interface through which a LatencyHistogram is exposed over JMX. Times are in milliseconds.
+ */
+public interface LatencyHistogramMBean {
+	long getCount();
+
+	double getMeanMillis();
+
+	double getMaxMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getP999Millis();
+
+	/**
+	 * Forgets all the times recorded so far.
+	 */
+	void reset();
+}
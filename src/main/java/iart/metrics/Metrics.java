@@ -0,0 +1,170 @@
+package iart.metrics;
+
+import iart.draw.DrawCommandBuffer;
+import iart.draw.TiledRenderTarget;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instrumentation of the recording pipeline, from the moment an input event reaches a hook, through the command buffer
+ * and the render thread, until it is shown in the preview. Times are taken with System.nanoTime() and counted in
+ * lock-free histograms, and the histograms, rates and resources used are exposed as MBeans in the "iart" JMX domain.
+ * <p>
+ * Metrics are only collected if the JVM is started with -Diart.metrics=true. Since enabled is a static final field,
+ * the JIT compiler removes the instrumentation entirely when it is false, and every call site checks it before
+ * reading the clock. A summary is also printed every so many seconds if -Diart.metrics.logInterval is set.
+ */
+public final class Metrics {
+	public static final boolean enabled = Boolean.getBoolean("iart.metrics");
+	private static final int logInterval = Integer.getInteger("iart.metrics.logInterval", 0); // Seconds, 0 for none
+
+	// Time from an input event reaching a hook until its command is in the command buffer
+	public static final LatencyHistogram enqueueLatency = new LatencyHistogram();
+	// Time from an input event reaching a hook until the render thread takes its command from the buffer
+	public static final LatencyHistogram queueLatency = new LatencyHistogram();
+	// Time from the oldest input event drawn in each batch reaching a hook until the batch is drawn on the canvas
+	public static final LatencyHistogram drawLatency = new LatencyHistogram();
+	// Time from the oldest input event drawn in each preview frame reaching a hook until the frame is shown
+	public static final LatencyHistogram presentLatency = new LatencyHistogram();
+
+	public static final LatencyHistogram drawTime = new LatencyHistogram(); // Drawing each batch of commands
+	public static final LatencyHistogram previewFrameTime = new LatencyHistogram(); // Showing each preview frame
+	public static final LatencyHistogram saveTime = new LatencyHistogram(); // Saving each image
+
+	private static final PipelineMetrics pipeline = new PipelineMetrics();
+	private static boolean started;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the current time, to stamp an event with when it enters the pipeline.
+	 *
+	 * @return System.nanoTime(), or 0 if metrics are disabled
+	 */
+	public static long now() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Counts an input event received by one of the hooks.
+	 */
+	public static void eventReceived() {
+		if (enabled)
+			pipeline.eventReceived();
+	}
+
+	/**
+	 * Counts a shape sent to the render target.
+	 */
+	public static void drawCall() {
+		if (enabled)
+			pipeline.drawCall();
+	}
+
+	/**
+	 * Counts a mouse move line handed to the drawer, before the mouse path is simplified.
+	 */
+	public static void mouseLine() {
+		if (enabled)
+			pipeline.mouseLine();
+	}
+
+	/**
+	 * Counts a polyline the mouse path was drawn with.
+	 */
+	public static void mousePolyline() {
+		if (enabled)
+			pipeline.mousePolyline();
+	}
+
+	/**
+	 * Counts a preview frame shown.
+	 */
+	public static void previewFrame() {
+		if (enabled)
+			pipeline.previewFrame();
+	}
+
+	/**
+	 * Sets the canvas and command buffer of the recording in progress, whose size and depth are reported.
+	 *
+	 * @param canvas   Canvas being drawn on, or null if nothing is being recorded
+	 * @param commands Command buffer of the recording, or null if nothing is being recorded
+	 */
+	public static void setRecording(TiledRenderTarget canvas, DrawCommandBuffer commands) {
+		if (enabled)
+			pipeline.setRecording(canvas, commands);
+	}
+
+	/**
+	 * Registers the MBeans and starts computing the rates, and printing the summary if a log interval is set. Does
+	 * nothing if metrics are disabled, or have already been started.
+	 */
+	public static synchronized void start() {
+		if (!enabled || started)
+			return;
+		started = true;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(pipeline, new ObjectName("iart:type=Pipeline"));
+			register(server, "EnqueueLatency", enqueueLatency);
+			register(server, "QueueLatency", queueLatency);
+			register(server, "DrawLatency", drawLatency);
+			register(server, "PresentLatency", presentLatency);
+			register(server, "DrawTime", drawTime);
+			register(server, "PreviewFrameTime", previewFrameTime);
+			register(server, "SaveTime", saveTime);
+		} catch (JMException e) {
+			System.err.println("Error registering metrics MBeans: " + e.getMessage());
+		}
+
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "iArt metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			private int seconds;
+
+			@Override
+			public void run() {
+				pipeline.sample();
+				if (logInterval > 0 && ++seconds % logInterval == 0)
+					System.out.println(summary());
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+	}
+
+	private static void register(MBeanServer server, String name, LatencyHistogram histogram) throws JMException {
+		server.registerMBean(histogram, new ObjectName("iart:type=Latency,name=" + name));
+	}
+
+	/**
+	 * Returns a one line summary of the rates, the 50th and 99th percentiles of the latencies, and the resources used.
+	 *
+	 * @return Summary of the metrics
+	 */
+	public static String summary() {
+		return String.format("Metrics: %.0f events/s, %.0f draw calls/s, %.1f frames/s, p50/p99 input to screen %s, " +
+							 "input to canvas %s, draw %s, frame %s, canvas %d MB, %d commands pending, %d dropped, " +
+							 "%d mouse lines in %d polylines, %.0f%% circle stamp hits",
+							 pipeline.getEventsPerSecond(), pipeline.getDrawCallsPerSecond(),
+							 pipeline.getPreviewFramesPerSecond(), percentiles(presentLatency),
+							 percentiles(drawLatency), percentiles(drawTime), percentiles(previewFrameTime),
+							 pipeline.getCanvasBytes() >> 20, pipeline.getPendingCommands(),
+							 pipeline.getDroppedCommands(), pipeline.getMouseLines(), pipeline.getMousePolylines(),
+							 pipeline.getStampCacheHitRate() * 100);
+	}
+
+	private static String percentiles(LatencyHistogram histogram) {
+		return String.format("%.2f/%.2f ms", histogram.getP50Millis(), histogram.getP99Millis());
+	}
+}
@@ -0,0 +1,134 @@
+package iart.metrics;
+
+import iart.draw.DrawCommandBuffer;
+import iart.draw.StampCache;
+import iart.draw.TiledRenderTarget;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the recording pipeline, and the rates computed from them. The counters can be incremented from any
+ * thread, and the rates are updated by calling sample() periodically.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+	private final LongAdder events = new LongAdder(), drawCalls = new LongAdder(), previewFrames = new LongAdder();
+	private final LongAdder mouseLines = new LongAdder(), mousePolylines = new LongAdder();
+
+	private volatile TiledRenderTarget canvas;
+	private volatile DrawCommandBuffer commands;
+
+	// Only written by the thread calling sample()
+	private long lastSample = System.nanoTime(), lastEvents, lastDrawCalls, lastPreviewFrames;
+	private volatile double eventsPerSecond, drawCallsPerSecond, previewFramesPerSecond;
+
+	PipelineMetrics() {
+	}
+
+	void eventReceived() {
+		events.increment();
+	}
+
+	void drawCall() {
+		drawCalls.increment();
+	}
+
+	void previewFrame() {
+		previewFrames.increment();
+	}
+
+	void mouseLine() {
+		mouseLines.increment();
+	}
+
+	void mousePolyline() {
+		mousePolylines.increment();
+	}
+
+	void setRecording(TiledRenderTarget canvas, DrawCommandBuffer commands) {
+		this.canvas = canvas;
+		this.commands = commands;
+	}
+
+	/**
+	 * Computes the rates over the time since the last call.
+	 */
+	void sample() {
+		long now = System.nanoTime();
+		double seconds = (now - lastSample) / 1e9;
+		if (seconds <= 0)
+			return;
+
+		long events = this.events.sum(), drawCalls = this.drawCalls.sum(), previewFrames = this.previewFrames.sum();
+		eventsPerSecond = (events - lastEvents) / seconds;
+		drawCallsPerSecond = (drawCalls - lastDrawCalls) / seconds;
+		previewFramesPerSecond = (previewFrames - lastPreviewFrames) / seconds;
+
+		lastSample = now;
+		lastEvents = events;
+		lastDrawCalls = drawCalls;
+		lastPreviewFrames = previewFrames;
+	}
+
+	@Override
+	public double getEventsPerSecond() {
+		return eventsPerSecond;
+	}
+
+	@Override
+	public double getDrawCallsPerSecond() {
+		return drawCallsPerSecond;
+	}
+
+	@Override
+	public double getPreviewFramesPerSecond() {
+		return previewFramesPerSecond;
+	}
+
+	@Override
+	public long getEventsReceived() {
+		return events.sum();
+	}
+
+	@Override
+	public long getDrawCalls() {
+		return drawCalls.sum();
+	}
+
+	@Override
+	public long getPreviewFrames() {
+		return previewFrames.sum();
+	}
+
+	@Override
+	public long getMouseLines() {
+		return mouseLines.sum();
+	}
+
+	@Override
+	public long getMousePolylines() {
+		return mousePolylines.sum();
+	}
+
+	@Override
+	public long getCanvasBytes() {
+		TiledRenderTarget canvas = this.canvas;
+		return canvas == null ? 0 : canvas.getAllocatedBytes();
+	}
+
+	@Override
+	public double getStampCacheHitRate() {
+		return StampCache.getHitRate();
+	}
+
+	@Override
+	public int getPendingCommands() {
+		DrawCommandBuffer commands = this.commands;
+		return commands == null ? 0 : commands.size();
+	}
+
+	@Override
+	public long getDroppedCommands() {
+		DrawCommandBuffer commands = this.commands;
+		return commands == null ? 0 : commands.getDropped();
+	}
+}
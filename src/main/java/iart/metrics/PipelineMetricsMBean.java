@@ -0,0 +1,63 @@
+package iart.metrics;
+
+/**
+ * Management interface through which the throughput of the recording pipeline, and the resources it uses, are
+ * exposed over JMX. Rates are averaged over the last second.
+ */
+public interface PipelineMetricsMBean {
+	double getEventsPerSecond();
+
+	double getDrawCallsPerSecond();
+
+	double getPreviewFramesPerSecond();
+
+	long getEventsReceived();
+
+	long getDrawCalls();
+
+	long getPreviewFrames();
+
+	/**
+	 * Returns the number of mouse move lines handed to the drawer since the program started, before the mouse path is
+	 * simplified.
+	 *
+	 * @return Number of mouse lines
+	 */
+	long getMouseLines();
+
+	/**
+	 * Returns the number of polylines the mouse path has been drawn with since the program started, each a single draw
+	 * call. Compared to getMouseLines(), it gives how many draw calls coalescing the mouse path saved.
+	 *
+	 * @return Number of mouse polylines
+	 */
+	long getMousePolylines();
+
+	/**
+	 * Returns the memory, or disk space if the canvas is memory-mapped, used by the canvas being drawn on.
+	 *
+	 * @return Bytes used by the canvas, or 0 if nothing is being recorded
+	 */
+	long getCanvasBytes();
+
+	/**
+	 * Returns the fraction of the circles drawn since the program started that were blended from a cached stamp.
+	 *
+	 * @return Hit rate of the stamp cache, from 0 to 1
+	 */
+	double getStampCacheHitRate();
+
+	/**
+	 * Returns the number of draw commands waiting for the render thread.
+	 *
+	 * @return Number of pending commands, or 0 if nothing is being recorded
+	 */
+	int getPendingCommands();
+
+	/**
+	 * Returns the number of draw commands dropped in the current recording because the render thread fell behind.
+	 *
+	 * @return Number of commands dropped, or 0 if nothing is being recorded
+	 */
+	long getDroppedCommands();
+}
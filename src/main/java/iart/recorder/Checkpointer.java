@@ -0,0 +1,364 @@
+package iart.recorder;
+
+import iart.draw.AbstractRasterTarget;
+import iart.draw.TiledRenderTarget;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Periodically saves the canvas of a recording to disk, so the recording can be resumed if the program dies before it
+ * is stopped. Each checkpoint only writes the tiles drawn on since the previous one, so its cost follows how much was
+ * drawn in between, not the size of the canvas.
+ * <p>
+ * Tiles are stored compressed in files named after the SHA-256 hash of their pixels, so a tile that has not changed,
+ * or that is identical to another one, is never written twice. A manifest lists the tile files that make up the
+ * canvas. Tile files and the manifest are written to a temporary file first and then moved into place, so a crash in
+ * the middle of a checkpoint leaves the previous one intact. Tile files no longer listed in the manifest are deleted
+ * once the new manifest is in place.
+ * <p>
+ * The dirty tiles are copied on the thread that draws on the canvas, and hashed, compressed and written on a
+ * background thread. The buffers the tiles are copied into are handed back once they have been hashed, and reused by
+ * the next checkpoint, so checkpoints do not allocate a burst of new buffers every time.
+ */
+public class Checkpointer {
+	private static final int MAGIC = 0x69436b70; // "iCkp"
+	private static final int VERSION = 2; // Version 2 added the line quality
+
+	private static final String manifestName = "manifest", tilesDirName = "tiles", tileExtension = ".tile";
+	private static final int tilePixels = TiledRenderTarget.tileSize * TiledRenderTarget.tileSize;
+	private static final int maxPooledTiles = 128; // Tile buffers kept for reuse, more are left to the GC
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "iArt checkpoint");
+		thread.setDaemon(true); // Checkpoints are written atomically, so one cut short does no harm
+		return thread;
+	});
+	private final AtomicBoolean checkpointPending = new AtomicBoolean();
+	private final BlockingQueue<int[]> freeTiles = new ArrayBlockingQueue<>(maxPooledTiles);
+
+	private final Path directory, tilesDirectory;
+	private final TiledRenderTarget target;
+	private final double resMultiplier;
+
+	// Only accessed from the checkpoint thread
+	private final String[] tileHashes; // Hash of the file holding each tile, null for tiles never drawn on
+	private final Map<String, Integer> references = new HashMap<>(); // Number of tiles using each tile file
+	private final MessageDigest digest = newSha256();
+	private final byte[] tileBytes = new byte[tilePixels * 4];
+
+	/**
+	 * Starts checkpointing a canvas. Unless the canvas was restored from the checkpoint in the directory, the
+	 * checkpoint is deleted.
+	 *
+	 * @param directory     Directory in which to save the checkpoints
+	 * @param target        Canvas to save, it must not be filled again after this
+	 * @param resMultiplier Resolution multiplier of the recording
+	 * @param restoredFrom  Checkpoint the canvas was restored from, or null if it is a new canvas
+	 * @throws IOException If the directory could not be created, or the previous checkpoint could not be deleted
+	 */
+	public Checkpointer(Path directory, TiledRenderTarget target, double resMultiplier, Checkpoint restoredFrom)
+			throws IOException {
+		this.directory = directory;
+		this.tilesDirectory = directory.resolve(tilesDirName);
+		this.target = target;
+		this.resMultiplier = resMultiplier;
+		tileHashes = new String[target.getTilesX() * target.getTilesY()];
+
+		Files.createDirectories(tilesDirectory);
+		if (restoredFrom != null) {
+			for (int i = 0; i < restoredFrom.tileIndices.length; i++)
+				addReference(tileHashes[restoredFrom.tileIndices[i]] = restoredFrom.tileHashes[i]);
+		} else {
+			Files.deleteIfExists(directory.resolve(manifestName));
+			try (DirectoryStream<Path> tiles = Files.newDirectoryStream(tilesDirectory)) {
+				for (Path tile : tiles)
+					Files.delete(tile);
+			}
+		}
+	}
+
+	/**
+	 * Copies the tiles drawn on since the last checkpoint, and writes them to disk in the background. Must be called
+	 * from the thread that draws on the canvas.
+	 *
+	 * @param force If false, and the previous checkpoint is still being written, nothing is done, and the tiles are
+	 *              left for the next checkpoint. If true, the checkpoint is queued after the previous one.
+	 */
+	public void checkpoint(boolean force) {
+		if (!checkpointPending.compareAndSet(false, true) && !force)
+			return;
+
+		int[] dirtyTiles = target.takeDirtyTiles();
+		List<int[]> pixels = new ArrayList<>(dirtyTiles.length);
+		for (int index : dirtyTiles) {
+			int[] tile = freeTiles.poll();
+			if (tile == null)
+				tile = new int[tilePixels];
+			target.copyTile(index % target.getTilesX(), index / target.getTilesX(), tile);
+			pixels.add(tile);
+		}
+
+		int background = target.getBackground();
+		executor.execute(() -> {
+			try {
+				writeCheckpoint(dirtyTiles, pixels, background);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Error writing checkpoint: " + e.getMessage());
+			}
+			checkpointPending.set(false);
+		});
+	}
+
+	/**
+	 * Writes a last checkpoint, and waits for it to be written. The checkpoint is kept on disk, so the last recording
+	 * can still be resumed, and is complete before a new Checkpointer loads or deletes it.
+	 */
+	public void close() {
+		checkpoint(true);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Interrupted while writing the last checkpoint");
+		}
+	}
+
+	private void writeCheckpoint(int[] dirtyTiles, List<int[]> pixels, int background) throws IOException {
+		List<String> replaced = new ArrayList<>();
+		byte[] bytes = tileBytes;
+		for (int i = 0; i < dirtyTiles.length; i++) {
+			int[] tile = pixels.get(i);
+			for (int p = 0, b = 0; p < tilePixels; p++, b += 4) {
+				bytes[b] = (byte) (tile[p] >>> 24);
+				bytes[b + 1] = (byte) (tile[p] >> 16);
+				bytes[b + 2] = (byte) (tile[p] >> 8);
+				bytes[b + 3] = (byte) tile[p];
+			}
+			freeTiles.offer(tile);
+
+			String hash = sha256(bytes);
+			if (hash.equals(tileHashes[dirtyTiles[i]]))
+				continue;
+			if (!references.containsKey(hash))
+				writeAtomically(tilesDirectory.resolve(hash + tileExtension), out -> {
+					Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+					try {
+						DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater);
+						compressed.write(bytes);
+						compressed.finish();
+					} finally {
+						deflater.end();
+					}
+				});
+
+			if (tileHashes[dirtyTiles[i]] != null)
+				replaced.add(tileHashes[dirtyTiles[i]]);
+			addReference(tileHashes[dirtyTiles[i]] = hash);
+		}
+
+		writeAtomically(directory.resolve(manifestName), out -> {
+			DataOutputStream manifest = new DataOutputStream(new BufferedOutputStream(out));
+			manifest.writeInt(MAGIC);
+			manifest.writeInt(VERSION);
+			manifest.writeInt(target.getWidth());
+			manifest.writeInt(target.getHeight());
+			manifest.writeDouble(resMultiplier);
+			manifest.writeInt(background);
+			manifest.writeByte(target.getLineQuality().ordinal());
+			for (int tile = 0; tile < tileHashes.length; tile++) {
+				if (tileHashes[tile] != null) {
+					manifest.writeInt(tile);
+					manifest.writeUTF(tileHashes[tile]);
+				}
+			}
+			manifest.writeInt(-1);
+			manifest.flush();
+		});
+
+		// Only now that the manifest no longer lists them can the replaced tile files be deleted
+		for (String hash : replaced) {
+			int count = references.get(hash) - 1;
+			if (count == 0) {
+				references.remove(hash);
+				Files.deleteIfExists(tilesDirectory.resolve(hash + tileExtension));
+			} else {
+				references.put(hash, count);
+			}
+		}
+	}
+
+	private void addReference(String hash) {
+		references.merge(hash, 1, Integer::sum);
+	}
+
+	/**
+	 * Writes a file by writing a temporary file next to it, forcing it to disk, and moving it into place.
+	 */
+	private static void writeAtomically(Path file, Contents contents) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+													StandardOpenOption.TRUNCATE_EXISTING)) {
+			OutputStream out = Channels.newOutputStream(channel);
+			contents.write(out);
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private interface Contents {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private String sha256(byte[] bytes) {
+		byte[] hash = digest.digest(bytes); // Also resets the digest for the next tile
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+	private static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Every Java platform is required to support SHA-256
+		}
+	}
+
+	/**
+	 * Reads the manifest of the checkpoint in a directory.
+	 *
+	 * @param directory Directory holding the checkpoint
+	 * @return Checkpoint, or null if there is none
+	 * @throws IOException If the manifest could not be read
+	 */
+	public static Checkpoint load(Path directory) throws IOException {
+		Path manifestFile = directory.resolve(manifestName);
+		if (!Files.exists(manifestFile))
+			return null;
+
+		try (DataInputStream manifest = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(manifestFile)))) {
+			if (manifest.readInt() != MAGIC)
+				throw new IOException("Unsupported checkpoint manifest");
+			int version = manifest.readInt();
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported checkpoint manifest version " + version);
+
+			Checkpoint checkpoint = new Checkpoint(directory);
+			checkpoint.width = manifest.readInt();
+			checkpoint.height = manifest.readInt();
+			checkpoint.resMultiplier = manifest.readDouble();
+			checkpoint.background = manifest.readInt();
+			int quality = version >= 2 ? manifest.readByte() : AbstractRasterTarget.LineQuality.FAST.ordinal();
+			if (quality < 0 || quality >= AbstractRasterTarget.LineQuality.values().length)
+				throw new IOException("Unknown line quality " + quality + " in checkpoint manifest");
+			checkpoint.lineQuality = AbstractRasterTarget.LineQuality.values()[quality];
+
+			List<Integer> indices = new ArrayList<>();
+			List<String> hashes = new ArrayList<>();
+			for (int tile; (tile = manifest.readInt()) >= 0; ) {
+				indices.add(tile);
+				hashes.add(manifest.readUTF());
+			}
+			checkpoint.tileIndices = indices.stream().mapToInt(Integer::intValue).toArray();
+			checkpoint.tileHashes = hashes.toArray(new String[0]);
+			return checkpoint;
+		}
+	}
+
+	/**
+	 * Canvas saved by a checkpoint, as listed in its manifest.
+	 */
+	public static class Checkpoint {
+		private final Path tilesDirectory;
+		private int width, height, background;
+		private double resMultiplier;
+		private AbstractRasterTarget.LineQuality lineQuality;
+		private int[] tileIndices;
+		private String[] tileHashes;
+
+		private Checkpoint(Path directory) {
+			tilesDirectory = directory.resolve(tilesDirName);
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public double getResMultiplier() {
+			return resMultiplier;
+		}
+
+		public int getBackground() {
+			return background;
+		}
+
+		/**
+		 * Returns how the mouse lines of the recording were rasterized, so a resumed recording draws them the same way.
+		 *
+		 * @return Line quality of the canvas
+		 */
+		public AbstractRasterTarget.LineQuality getLineQuality() {
+			return lineQuality;
+		}
+
+		/**
+		 * Fills a canvas with the background of the checkpoint, and copies the saved tiles into it.
+		 *
+		 * @param target Canvas to restore, the same size as the one saved
+		 * @throws IOException If a tile could not be read
+		 */
+		public void restore(TiledRenderTarget target) throws IOException {
+			if (target.getWidth() != width || target.getHeight() != height)
+				throw new IllegalArgumentException("Checkpoint is " + width + "x" + height + ", canvas is " +
+												   target.getWidth() + "x" + target.getHeight());
+
+			target.fill(background);
+			target.takeDirtyTiles(); // The restored canvas matches the checkpoint
+			int[] pixels = new int[tilePixels];
+			for (int i = 0; i < tileIndices.length; i++) {
+				Path file = tilesDirectory.resolve(tileHashes[i] + tileExtension);
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+						new InflaterInputStream(Files.newInputStream(file))))) {
+					for (int p = 0; p < tilePixels; p++)
+						pixels[p] = in.readInt();
+				}
+				target.setTile(tileIndices[i] % target.getTilesX(), tileIndices[i] / target.getTilesX(), pixels);
+			}
+		}
+	}
+}
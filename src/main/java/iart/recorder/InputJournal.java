@@ -0,0 +1,212 @@
+package iart.recorder;
+
+import iart.draw.AbstractRasterTarget;
+import iart.input.InputListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of the input events of a recording, so the session can be rendered again later, at a
+ * different resolution or with a different color scheme. The log is written through a memory-mapped window on the
+ * file, which is moved forward as it fills up, so appending an event is a handful of byte writes to memory, with no
+ * system calls and no objects allocated.
+ * <p>
+ * The file starts with a header (see the constructor), followed by the records. Each record is a type byte, the time
+ * elapsed since the previous record in nanoseconds as an unsigned varint, and a payload that depends on the type.
+ * Pointer positions are stored as the zigzag varint difference from the previous position. A zero type byte marks
+ * the end of the log, which is also what a log cut short by a crash ends with, since the rest of the mapped window is
+ * zeroes.
+ * <p>
+ * The journal records events by listening to the InputSource of the recording, like the mouse and keyboard hooks. Its
+ * methods are synchronized, since events may be delivered from different threads. Event times are expected to be
+ * given by System.nanoTime().
+ */
+public class InputJournal implements InputListener, Closeable {
+	public static final int MAGIC = 0x69417274; // "iArt"
+	public static final int VERSION = 3; // Version 2 added the seed to the header, version 3 the line quality
+
+	// Record types, see the listener methods for their payloads. POINTER_ORIGIN is no longer written, the first mouse
+	// move gives the initial position instead, but it is still read from older journals
+	public static final byte END = 0, POINTER_ORIGIN = 1, MOUSE_MOVE = 2, MOUSE_PRESS = 3, MOUSE_RELEASE = 4,
+			MOUSE_WHEEL = 5, KEY_PRESS = 6, PAUSE = 7, RESUME = 8;
+
+	public static final String fileExtension = ".iartlog";
+
+	private static final int windowSize = 1 << 20; // Size of the mapped window on the file, 1 MiB
+	private static final int maxRecordSize = 64; // More than the largest record can take up
+
+	private final FileChannel channel;
+	private MappedByteBuffer window;
+	private long windowStart;
+
+	private long lastTime;
+	private int lastX, lastY;
+
+	/**
+	 * Creates the log file and writes its header, which holds, in order: the magic number and the version of the
+	 * format as ints, the size of the screen the session was recorded on as ints, the resolution multiplier it was
+	 * recorded with as a double, the time it was started at in milliseconds since the epoch as a long, the seed of
+	 * its SessionRandom session as a long, the quality of its mouse lines as a byte holding the ordinal of the
+	 * LineQuality, and the class name of the color scheme it was recorded with, as an unsigned short length followed by
+	 * UTF-8 bytes.
+	 *
+	 * @param file            File in which to write the log, it must not exist yet
+	 * @param screenWidth     Width of the screen(s), in screen pixels
+	 * @param screenHeight    Height of the screen(s), in screen pixels
+	 * @param resMultiplier   Resolution multiplier the session is being recorded with
+	 * @param seed            Seed of the SessionRandom session of the recording
+	 * @param lineQuality     How the mouse lines of the recording are rasterized
+	 * @param colorSchemeName Class name of the color scheme the session is being recorded with
+	 * @throws IOException If the file could not be created
+	 */
+	public InputJournal(Path file, int screenWidth, int screenHeight, double resMultiplier, long seed,
+						AbstractRasterTarget.LineQuality lineQuality, String colorSchemeName) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+								   StandardOpenOption.WRITE);
+		window = channel.map(FileChannel.MapMode.READ_WRITE, 0, windowSize);
+
+		byte[] name = colorSchemeName.getBytes(StandardCharsets.UTF_8);
+		window.putInt(MAGIC).putInt(VERSION);
+		window.putInt(screenWidth).putInt(screenHeight);
+		window.putDouble(resMultiplier);
+		window.putLong(System.currentTimeMillis());
+		window.putLong(seed);
+		window.put((byte) lineQuality.ordinal());
+		window.putShort((short) name.length).put(name);
+
+		lastTime = System.nanoTime();
+	}
+
+	/**
+	 * Records the pointer moving. The first move recorded gives the position of the pointer when the recording started.
+	 * Payload: x and y as zigzag varints, relative to the previous position, initially (0, 0).
+	 */
+	@Override
+	public synchronized void mouseMoved(int x, int y, long time) {
+		startRecord(MOUSE_MOVE, time);
+		putPosition(x, y);
+	}
+
+	/**
+	 * Records a mouse button being pressed. Payload: the button as a varint.
+	 */
+	@Override
+	public synchronized void mousePressed(int button, long time) {
+		startRecord(MOUSE_PRESS, time);
+		putVarint(button);
+	}
+
+	/**
+	 * Records a mouse button being released. Payload: the button as a varint.
+	 */
+	@Override
+	public synchronized void mouseReleased(int button, long time) {
+		startRecord(MOUSE_RELEASE, time);
+		putVarint(button);
+	}
+
+	/**
+	 * Records the mouse wheel being turned. Payload: the rotation as a zigzag varint.
+	 */
+	@Override
+	public synchronized void mouseWheelMoved(int rotation, long time) {
+		startRecord(MOUSE_WHEEL, time);
+		putVarint(zigzag(rotation));
+	}
+
+	/**
+	 * Records a key being pressed, by its position in the keyboard layout rather than its key code, so the log can be
+	 * replayed without the layout. Payload: column, row, keys in the row and rows in the layout, as varints.
+	 */
+	@Override
+	public synchronized void keyPressed(int column, int row, int keysInRow, int rows, long time) {
+		startRecord(KEY_PRESS, time);
+		putVarint(column);
+		putVarint(row);
+		putVarint(keysInRow);
+		putVarint(rows);
+	}
+
+	/**
+	 * Records the recording being paused. Events are still recorded while paused, but are not drawn. No payload.
+	 */
+	public synchronized void recordPause() {
+		startRecord(PAUSE, System.nanoTime());
+	}
+
+	/**
+	 * Records the recording being resumed. No payload.
+	 */
+	public synchronized void recordResume() {
+		startRecord(RESUME, System.nanoTime());
+	}
+
+	/**
+	 * Writes the type of a record and the time elapsed since the previous one, moving the mapped window forward first
+	 * if the record might not fit in it. Events delivered out of order by different threads are recorded as happening
+	 * at the same time as the previous record, since the elapsed time is unsigned.
+	 */
+	private void startRecord(byte type, long time) {
+		if (window == null)
+			return;
+		if (window.remaining() < maxRecordSize) {
+			try {
+				windowStart += window.position();
+				window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, windowSize);
+			} catch (IOException e) {
+				System.err.println("Error growing the input journal, no more events will be recorded");
+				window = null;
+				return;
+			}
+		}
+
+		window.put(type);
+		putVarint(Math.max(time - lastTime, 0));
+		lastTime = Math.max(time, lastTime);
+	}
+
+	private void putPosition(int x, int y) {
+		if (window == null)
+			return;
+		putVarint(zigzag(x - lastX));
+		putVarint(zigzag(y - lastY));
+		lastX = x;
+		lastY = y;
+	}
+
+	private void putVarint(long value) {
+		if (window == null)
+			return;
+		while ((value & ~0x7FL) != 0) {
+			window.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		window.put((byte) value);
+	}
+
+	private static long zigzag(int value) {
+		return (value << 1 ^ value >> 31) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Writes the end marker, flushes the log to disk and closes it. The file is left as long as the last window mapped,
+	 * instead of being truncated to the records written, since a file can not be truncated while part of it is still
+	 * mapped on some platforms, and there is no way to unmap it. The zeroes after the end marker are ignored when the
+	 * log is read.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (window != null) {
+			window.put(END); // Records never fill the window, so there is always room for it
+			window.force();
+			window = null;
+		}
+		channel.close();
+	}
+}
@@ -0,0 +1,238 @@
+package iart.recorder;
+
+import iart.draw.AbstractRasterTarget;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back a log written by InputJournal. The records are read one at a time with next(), and the fields of the
+ * current record are available through the getters until next() is called again, so reading a log allocates nothing
+ * per record either.
+ */
+public class InputJournalReader implements Closeable {
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+
+	private final int screenWidth, screenHeight;
+	private final double resMultiplier;
+	private final long startTime, seed;
+	private final AbstractRasterTarget.LineQuality lineQuality;
+	private final String colorSchemeName;
+
+	private byte type;
+	private long time; // Nanoseconds since the start of the log
+	private int x, y, button, wheelRotation, keyColumn, keyRow, keysInRow, keyRows;
+
+	/**
+	 * Opens a log and reads its header.
+	 *
+	 * @param file Log file to read
+	 * @throws IOException If the file could not be read, or is not an input journal
+	 */
+	public InputJournalReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+			if (buffer.getInt() != InputJournal.MAGIC)
+				throw new IOException("Not an iArt input journal: " + file);
+			int version = buffer.getInt();
+			if (version < 1 || version > InputJournal.VERSION)
+				throw new IOException("Unsupported input journal version " + version + ": " + file);
+
+			screenWidth = buffer.getInt();
+			screenHeight = buffer.getInt();
+			resMultiplier = buffer.getDouble();
+			startTime = buffer.getLong();
+			seed = version >= 2 ? buffer.getLong() : 0;
+			int quality = version >= 3 ? buffer.get() : AbstractRasterTarget.LineQuality.FAST.ordinal();
+			if (quality < 0 || quality >= AbstractRasterTarget.LineQuality.values().length)
+				throw new IOException("Unknown line quality " + quality + ": " + file);
+			lineQuality = AbstractRasterTarget.LineQuality.values()[quality];
+			byte[] name = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(name);
+			colorSchemeName = new String(name, StandardCharsets.UTF_8);
+		} catch (BufferUnderflowException e) {
+			channel.close();
+			throw new IOException("Truncated input journal: " + file);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getScreenWidth() {
+		return screenWidth;
+	}
+
+	public int getScreenHeight() {
+		return screenHeight;
+	}
+
+	public double getResMultiplier() {
+		return resMultiplier;
+	}
+
+	/**
+	 * Returns the time the recording was started at.
+	 *
+	 * @return Start time in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the seed of the random numbers drawn during the recording. Journals written before the seed was stored
+	 * give 0, so they are still rendered the same way every time, although not the way they were recorded.
+	 *
+	 * @return Seed for SessionRandom
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns how the mouse lines were rasterized during the recording. Journals written before it was stored give
+	 * fast lines, which were the only ones back then.
+	 *
+	 * @return Line quality of the recording
+	 */
+	public AbstractRasterTarget.LineQuality getLineQuality() {
+		return lineQuality;
+	}
+
+	public String getColorSchemeName() {
+		return colorSchemeName;
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return True if a record was read, false if the end of the log was reached
+	 */
+	public boolean next() {
+		if (!buffer.hasRemaining() || (type = buffer.get()) == InputJournal.END)
+			return false;
+
+		try {
+			time += getVarint();
+			switch (type) {
+				case InputJournal.POINTER_ORIGIN:
+				case InputJournal.MOUSE_MOVE:
+					x += unzigzag(getVarint());
+					y += unzigzag(getVarint());
+					break;
+				case InputJournal.MOUSE_PRESS:
+				case InputJournal.MOUSE_RELEASE:
+					button = (int) getVarint();
+					break;
+				case InputJournal.MOUSE_WHEEL:
+					wheelRotation = unzigzag(getVarint());
+					break;
+				case InputJournal.KEY_PRESS:
+					keyColumn = (int) getVarint();
+					keyRow = (int) getVarint();
+					keysInRow = (int) getVarint();
+					keyRows = (int) getVarint();
+					break;
+				case InputJournal.PAUSE:
+				case InputJournal.RESUME:
+					break;
+				default:
+					type = InputJournal.END; // Unknown record, the rest of the log can not be parsed
+					return false;
+			}
+		} catch (BufferUnderflowException e) {
+			type = InputJournal.END; // Last record was cut short
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the type of the current record, one of the record type constants in InputJournal.
+	 *
+	 * @return Type of the current record
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the time the current record was written at.
+	 *
+	 * @return Nanoseconds elapsed between the log being created and the current record
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the position of the pointer as of the current record, for every type of record.
+	 *
+	 * @return X coordinate of the pointer, in screen pixels
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the position of the pointer as of the current record, for every type of record.
+	 *
+	 * @return Y coordinate of the pointer, in screen pixels
+	 */
+	public int getY() {
+		return y;
+	}
+
+	public int getButton() {
+		return button;
+	}
+
+	public int getWheelRotation() {
+		return wheelRotation;
+	}
+
+	public int getKeyColumn() {
+		return keyColumn;
+	}
+
+	public int getKeyRow() {
+		return keyRow;
+	}
+
+	public int getKeysInRow() {
+		return keysInRow;
+	}
+
+	public int getKeyRows() {
+		return keyRows;
+	}
+
+	private long getVarint() {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	private static int unzigzag(long value) {
+		int v = (int) value;
+		return v >>> 1 ^ -(v & 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,183 @@
+package iart.recorder;
+
+import iart.Main;
+import iart.color_schemes.ColorScheme;
+import iart.draw.AbstractRasterTarget;
+import iart.draw.DisplayList;
+import iart.draw.DrawCommandBuffer;
+import iart.draw.DrawEvent;
+import iart.draw.Drawer;
+import iart.draw.RenderTarget;
+import iart.draw.TileStorage;
+import iart.draw.TiledRenderTarget;
+import iart.input.JournalInputSource;
+import iart.listeners.keyboard.KeyboardHook;
+import iart.listeners.mouse.MouseHook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Renders a session recorded in an input journal again, without the UI or the native hooks, at any resolution
+ * multiplier and with any color scheme.
+ * <p>
+ * Rendering happens in two passes. First, the events in the journal are fed to the mouse and keyboard hooks in order,
+ * and the shapes they produce are drawn onto a display list, which fixes the geometry and colors of every shape, since
+ * color schemes may depend on the order of events. Then the target is split into tiles, each shape is assigned to the
+ * tiles its bounds overlap, and the tiles are rasterized in parallel, each drawing its shapes in their original order.
+ * <p>
+ * Random numbers come from the seed recorded in the journal, through SessionRandom, and color schemes that change
+ * over time get the times of its events, through SessionClock, so a journal renders to the same image every time it
+ * is rendered with the same settings.
+ */
+public class JournalRenderer {
+	private static final int commandBufferCapacity = 1 << 10;
+
+	private final double resMultiplier;
+	private final ColorScheme colorScheme;
+	private final AbstractRasterTarget.LineQuality lineQuality;
+	private final int threads;
+
+	private long linesQueued, polylinesDrawn; // Mouse path statistics of the last render, see Drawer
+
+	/**
+	 * Prepares to render journals with the given settings.
+	 *
+	 * @param resMultiplier Multiplier applied to the width and height of the screen the session was recorded on
+	 * @param colorScheme   ColorScheme to draw the session with
+	 * @param lineQuality   How to rasterize the mouse lines, or null to draw them as they were recorded
+	 * @param threads       Number of threads with which to rasterize the tiles
+	 */
+	public JournalRenderer(double resMultiplier, ColorScheme colorScheme, AbstractRasterTarget.LineQuality lineQuality,
+						   int threads) {
+		this.resMultiplier = resMultiplier;
+		this.colorScheme = colorScheme;
+		this.lineQuality = lineQuality;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Replays a journal and renders it onto a new render target.
+	 *
+	 * @param journal Journal to render, from its first record
+	 * @param storage Storage in which to keep the pixels of the target
+	 * @return Rendered image
+	 */
+	public TiledRenderTarget render(InputJournalReader journal, TileStorage storage) {
+		int width = (int) (journal.getScreenWidth() * resMultiplier);
+		int height = (int) (journal.getScreenHeight() * resMultiplier);
+
+		DisplayList shapes = replay(journal, width, height);
+
+		TiledRenderTarget target = new TiledRenderTarget(width, height, storage,
+														 lineQuality != null ? lineQuality : journal.getLineQuality());
+		target.fill(shapes.getBackground());
+		rasterize(shapes, target);
+		return target;
+	}
+
+	/**
+	 * Feeds the events in the journal to the hooks, and draws the shapes they produce onto a display list. The hooks
+	 * and color schemes read the recording settings from Recorder and Main, so those are set as if a recording with
+	 * this renderer's settings was in progress, with the journal as its input source.
+	 */
+	private DisplayList replay(InputJournalReader journal, int width, int height) {
+		Recorder.state = State.RECORDING;
+		Recorder.resMultiplier = resMultiplier;
+		Recorder.colorScheme = colorScheme;
+		Main.screenWidth = width;
+		Main.screenHeight = height;
+		SessionRandom.startSession(journal.getSeed()); // So every render of the journal draws the same random numbers
+		SessionClock.startSession(0); // And schemes that change over time get the times of the journal
+
+		JournalInputSource source = new JournalInputSource(journal);
+		source.setPauseListener(paused -> Recorder.state = paused ? State.PAUSED : State.RECORDING);
+		Recorder.inputSource = source;
+		colorScheme.startColorScheme(); // Schemes that listen to the input, such as to the mouse wheel, get the replay
+
+		DisplayList shapes = new DisplayList(width, height);
+		shapes.fill(colorScheme.getArgb(DrawEvent.BACKGROUND, 0, 0));
+
+		Drawer drawer = new Drawer(shapes);
+		DrawCommandBuffer commands = new DrawCommandBuffer(commandBufferCapacity);
+		source.addListener(new MouseHook(commands, width, height, 0)); // Journal times start at 0
+		source.addListener(new KeyboardHook(commands, width, height));
+
+		while (source.next())
+			commands.drain(drawer);
+		drawer.flush();
+		linesQueued = drawer.getLinesQueued();
+		polylinesDrawn = drawer.getPolylinesDrawn();
+
+		colorScheme.stopColorScheme();
+		Recorder.state = State.STOPPED;
+		return shapes;
+	}
+
+	/**
+	 * Returns the number of lines the mouse hook drew in the last render, before the mouse path was simplified.
+	 *
+	 * @return Number of lines
+	 */
+	public long getLinesQueued() {
+		return linesQueued;
+	}
+
+	/**
+	 * Returns the number of polylines the mouse path was drawn with in the last render.
+	 *
+	 * @return Number of polylines
+	 */
+	public long getPolylinesDrawn() {
+		return polylinesDrawn;
+	}
+
+	/**
+	 * Assigns each shape to the tiles its bounds overlap, and draws the shapes of each tile in parallel.
+	 */
+	private void rasterize(DisplayList shapes, TiledRenderTarget target) {
+		int tilesX = target.getTilesX(), tilesY = target.getTilesY();
+		int[][] tileShapes = new int[tilesX * tilesY][];
+		int[] tileShapeCounts = new int[tilesX * tilesY];
+
+		for (int i = 0; i < shapes.size(); i++) {
+			int minTileX = Math.max(shapes.getMinX(i), 0) >> TiledRenderTarget.tileShift;
+			int minTileY = Math.max(shapes.getMinY(i), 0) >> TiledRenderTarget.tileShift;
+			int maxTileX = Math.min(shapes.getMaxX(i), target.getWidth() - 1) >> TiledRenderTarget.tileShift;
+			int maxTileY = Math.min(shapes.getMaxY(i), target.getHeight() - 1) >> TiledRenderTarget.tileShift;
+			for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+				for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+					int tile = tileY * tilesX + tileX;
+					if (tileShapes[tile] == null)
+						tileShapes[tile] = new int[16];
+					else if (tileShapeCounts[tile] == tileShapes[tile].length)
+						tileShapes[tile] = Arrays.copyOf(tileShapes[tile], tileShapeCounts[tile] * 2);
+					tileShapes[tile][tileShapeCounts[tile]++] = i;
+				}
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			for (int tile = 0; tile < tileShapes.length; tile++) {
+				if (tileShapes[tile] == null)
+					continue;
+				RenderTarget tileTarget = target.getTileTarget(tile % tilesX, tile / tilesX);
+				int[] indices = tileShapes[tile];
+				int count = tileShapeCounts[tile];
+				tasks.add(pool.submit(() -> {
+					for (int i = 0; i < count; i++)
+						shapes.draw(indices[i], tileTarget);
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
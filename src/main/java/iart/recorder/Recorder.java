@@ -3,29 +3,31 @@ package iart.recorder;
 import iart.Main;
 import iart.color_schemes.ColorScheme;
 import iart.color_schemes.grayscale_scheme.GrayscaleScheme;
+import iart.draw.AbstractRasterTarget;
+import iart.draw.DrawCommandBuffer;
 import iart.draw.DrawEvent;
 import iart.draw.Drawer;
+import iart.draw.HeapTileStorage;
+import iart.draw.MappedTileStorage;
+import iart.draw.PreviewFrames;
+import iart.draw.RenderTarget;
+import iart.draw.TileStorage;
+import iart.draw.TiledRenderTarget;
+import iart.input.InputSource;
 import iart.listeners.keyboard.KeyboardHook;
 import iart.listeners.mouse.MouseHook;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.geometry.Rectangle2D;
-import javafx.scene.Node;
-import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import iart.metrics.Metrics;
 import javafx.scene.control.MenuItem;
-import javafx.scene.image.WritableImage;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
-import org.jnativehook.GlobalScreen;
 
-import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
@@ -37,42 +39,239 @@ public class Recorder {
 	private KeyboardHook keyboardHook;
 
 	public static State state = State.STOPPED;
+	public static InputSource inputSource; // Source of the input events that are drawn, set before recording
 	public static ColorScheme colorScheme = new GrayscaleScheme();
 	public static double resMultiplier = 1d;
 
-	private Canvas canvas;
+	// Settings used when saving images to PNG files
+	public static int pngCompressionLevel = 6;
+	public static int pngThreads = Runtime.getRuntime().availableProcessors();
 
-	public Canvas getCanvas() {
-		return canvas;
+	// Keep the pixels of the canvas in a memory-mapped file in the iArt folder instead of on the heap
+	public static boolean memoryMappedCanvas = false;
+
+	// Record the input events of each recording to a journal in the iArt folder, so they can be rendered again later
+	public static boolean recordInputJournal = false;
+
+	// Maximum number of preview frames handed over to the UI per second
+	public static int previewFps = 30;
+
+	// Seconds between checkpoints of the canvas, which allow resuming a recording if the program dies
+	public static int checkpointInterval = 30;
+
+	// Largest distance, in pixels of the image, by which the mouse path may be moved when it is simplified before being
+	// drawn. 0 only leaves out points that lie on a straight line
+	public static double pathTolerance = 0.5;
+
+	// Whether mouse lines are anti-aliased, which makes them smoother, but blends twice as many pixels. Only read when
+	// a recording starts, the canvas keeps it until the recording ends, and the journal and checkpoints record it
+	public static AbstractRasterTarget.LineQuality lineQuality = AbstractRasterTarget.LineQuality.FAST;
+
+	// What to do with new mouse move lines when the renderer falls so far behind that there is no room for them
+	public static DrawCommandBuffer.OverflowPolicy lineOverflowPolicy = DrawCommandBuffer.OverflowPolicy.MERGE;
+
+	// Maximum number of lines, and of other shapes, that can be waiting to be drawn
+	private static final int lineBufferCapacity = 1 << 14, shapeBufferCapacity = 1 << 12;
+
+	private static final SavePipeline savePipeline = new SavePipeline();
+
+	private TiledRenderTarget target;
+	private Drawer drawer;
+	private DrawCommandBuffer commands;
+	private InputJournal journal;
+	private Checkpointer checkpointer;
+	private RenderThread renderThread; // Owns the canvas while recording, null once drawing has finished
+
+	public RenderTarget getTarget() {
+		return target;
+	}
+
+	public DrawCommandBuffer getCommandBuffer() {
+		return commands;
+	}
+
+	public static SavePipeline getSavePipeline() {
+		return savePipeline;
+	}
+
+	/**
+	 * Replaces the preview sized copy of the render target which is updated as shapes are drawn. The new preview is
+	 * initialized by sampling the full resolution render target, so this should only be called when the size of the
+	 * preview changes. The preview is rebuilt on the render thread, before its next frame.
+	 *
+	 * @param width  Width of the preview in pixels
+	 * @param height Height of the preview in pixels
+	 */
+	public void rebuildPreviewTarget(int width, int height) {
+		if (renderThread != null)
+			renderThread.requestPreviewSize(width, height);
+	}
+
+	/**
+	 * Takes the latest preview frame published by the render thread, if it has not been taken already. The frame can
+	 * be read until the next call. Must be called from the JavaFX application thread.
+	 *
+	 * @return Latest preview frame, or null if there is no new frame or nothing is being recorded
+	 */
+	public PreviewFrames.Frame takePreviewFrame() {
+		return renderThread == null ? null : renderThread.getPreviewFrames().take();
 	}
 
 	/**
 	 * Starts the mouse and keyboard tracking, and clears the canvas in order to draw on it.
 	 */
-	public boolean startRecording(final Main main, double resMultiplier) {
+	public boolean startRecording(double resMultiplier) {
+		return startRecording(resMultiplier, null);
+	}
+
+	/**
+	 * Starts a recording on a canvas restored from the last checkpoint, so a recording that was cut short by the
+	 * program dying can be continued. The checkpoint must have been made on a screen of the same size.
+	 *
+	 * @return True if the recording was resumed, false if there is no checkpoint or it could not be restored
+	 */
+	public boolean resumeLastSession() {
+		Checkpointer.Checkpoint checkpoint;
+		try {
+			checkpoint = Checkpointer.load(getCheckpointDirectory());
+		} catch (IOException e) {
+			System.err.println("Error reading last checkpoint");
+			return false;
+		}
+		if (checkpoint == null) {
+			System.err.println("There is no session to resume");
+			return false;
+		}
+		return startRecording(checkpoint.getResMultiplier(), checkpoint);
+	}
+
+	/**
+	 * Starts the mouse and keyboard tracking, and either clears the canvas or restores it from a checkpoint.
+	 *
+	 * @param resMultiplier Multiplier applied to the width and height of the screen
+	 * @param checkpoint    Checkpoint to restore the canvas from, or null to start with a blank canvas
+	 * @return True if the recording was started
+	 */
+	private boolean startRecording(double resMultiplier, Checkpointer.Checkpoint checkpoint) {
 		if (state != State.STOPPED)
 			return false;
-		state = State.RECORDING;
 
+		Screen screen = Screen.getScreens().get(Screen.getScreens().size() - 1);
+		int width = (int) (screen.getBounds().getMaxX() * resMultiplier);
+		int height = (int) (screen.getBounds().getMaxY() * resMultiplier);
+
+		AbstractRasterTarget.LineQuality quality = checkpoint != null ? checkpoint.getLineQuality() : lineQuality;
+		target = new TiledRenderTarget(width, height, createTileStorage(), quality);
+		if (checkpoint == null) {
+			target.fill(colorScheme.getArgb(DrawEvent.BACKGROUND, 0, 0));
+		} else {
+			try {
+				checkpoint.restore(target);
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("Error restoring last checkpoint: " + e.getMessage());
+				target.close();
+				target = null;
+				return false;
+			}
+		}
+
+		try {
+			checkpointer = new Checkpointer(getCheckpointDirectory(), target, resMultiplier, checkpoint);
+		} catch (IOException e) {
+			System.err.println("Error setting up checkpoints, recording without them...");
+		}
+
+		state = State.RECORDING;
 		Recorder.resMultiplier = resMultiplier;
+		SessionRandom.startSession(SessionRandom.newSeed());
+		SessionClock.startSession(System.nanoTime()); // Journal times start at about the same time
+		journal = recordInputJournal ? createJournal(resMultiplier, quality) : null;
+
+		Main.screenWidth = width;
+		Main.screenHeight = height;
+
+		drawer = new Drawer(target);
+		commands = new DrawCommandBuffer(lineBufferCapacity, shapeBufferCapacity, lineOverflowPolicy);
+		renderThread = new RenderThread(target, drawer, commands, checkpointer);
+		renderThread.start();
+		Metrics.setRecording(target, commands);
+
+		mouseHook = new MouseHook(commands, Main.screenWidth, Main.screenHeight, System.nanoTime());
+		keyboardHook = new KeyboardHook(commands, Main.screenWidth, Main.screenHeight);
+		if (journal != null)
+			inputSource.addListener(journal);
+		inputSource.addListener(mouseHook);
+		inputSource.addListener(keyboardHook);
 
-		Main.screenWidth = (int) (Screen.getScreens().get(Screen.getScreens().size() - 1).getBounds().getMaxX() *
-								  resMultiplier);
-		Main.screenHeight = (int) (Screen.getScreens().get(Screen.getScreens().size() - 1).getBounds().getMaxY() *
-								   resMultiplier);
+		return true;
+	}
 
-		canvas = new Canvas(Main.screenWidth, Main.screenHeight);
+	private static Path getCheckpointDirectory() {
+		return Paths.get(Main.iArtFolderPath, ".checkpoint");
+	}
 
-		GraphicsContext gc = canvas.getGraphicsContext2D();
-		gc.setFill(colorScheme.getColor(DrawEvent.BACKGROUND, null));
-		gc.fillRect(0, 0, Main.screenWidth, Main.screenHeight);
+	/**
+	 * Creates the journal for a new recording in the iArt folder, named after the time the recording started.
+	 *
+	 * @param resMultiplier Resolution multiplier the recording is made with
+	 * @param lineQuality   How the mouse lines of the recording are rasterized
+	 * @return Journal in which to record the input events, or null if it could not be created
+	 */
+	private static InputJournal createJournal(double resMultiplier, AbstractRasterTarget.LineQuality lineQuality) {
+		createIArtDirIfNotExists();
+		Screen screen = Screen.getScreens().get(Screen.getScreens().size() - 1);
+		String name = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + InputJournal.fileExtension;
+		try {
+			return new InputJournal(Paths.get(Main.iArtFolderPath, name), (int) screen.getBounds().getMaxX(),
+									(int) screen.getBounds().getMaxY(), resMultiplier, SessionRandom.getSeed(),
+									lineQuality, colorScheme.getClass().getName());
+		} catch (IOException e) {
+			System.err.println("Error creating input journal, recording without it...");
+			return null;
+		}
+	}
 
-		Drawer drawer = new Drawer(main, gc);
+	/**
+	 * Creates the storage for the pixels of a new canvas, as set in memoryMappedCanvas. Falls back to the heap if the
+	 * backing file can not be created.
+	 *
+	 * @return Storage for the canvas tiles
+	 */
+	private static TileStorage createTileStorage() {
+		if (memoryMappedCanvas) {
+			createIArtDirIfNotExists();
+			try {
+				return new MappedTileStorage(Paths.get(Main.iArtFolderPath));
+			} catch (IOException e) {
+				System.err.println("Error creating canvas backing file, keeping canvas in memory...");
+			}
+		}
+		return new HeapTileStorage();
+	}
 
-		mouseHook = new MouseHook(drawer, Main.screenWidth, Main.screenHeight);
-		keyboardHook = new KeyboardHook(drawer, Main.screenWidth, Main.screenHeight);
+	/**
+	 * Estimates how much memory, or disk space if the canvas is memory-mapped, a recording with the given resolution
+	 * multiplier would take at most, if every part of the screen was drawn on.
+	 *
+	 * @param resMultiplier Multiplier applied to the width and height of the screen
+	 * @return Maximum size of the canvas in bytes
+	 */
+	public static long estimateCanvasBytes(double resMultiplier) {
+		Screen screen = Screen.getScreens().get(Screen.getScreens().size() - 1);
+		return TiledRenderTarget.getMaxBytes((int) (screen.getBounds().getMaxX() * resMultiplier),
+											 (int) (screen.getBounds().getMaxY() * resMultiplier));
+	}
 
-		return true;
+	/**
+	 * Stops the render thread, and draws the commands it left in the buffer on the calling thread, to which the
+	 * canvas belongs from then on.
+	 */
+	private void finishDrawing() {
+		if (renderThread == null)
+			return;
+		renderThread.finish();
+		renderThread.drawPendingCommands();
+		renderThread = null;
 	}
 
 	/**
@@ -82,40 +281,109 @@ public class Recorder {
 		if (state == State.RECORDING) {
 			state = State.PAUSED;
 			pauseRecording.setText("Resume");
+			if (journal != null)
+				journal.recordPause();
 		} else if (state == State.PAUSED) {
 			state = State.RECORDING;
 			pauseRecording.setText("Pause");
+			if (journal != null)
+				journal.recordResume();
 		}
 	}
 
 	/**
-	 * Stops the drawing process, removes mouse and keyboard trackers, and saves the canvas to an image.
+	 * Stops the drawing process, removes mouse and keyboard trackers, and hands the canvas over to the save pipeline
+	 * to be saved to an image in the background. A new recording can be started as soon as this method returns.
 	 *
 	 * @param stage Stage which contains the canvas that was being drawn to, so that it can be saved as an image
 	 */
 	public boolean stopRecording(final Stage stage) {
+		if (!endRecording())
+			return false;
+		saveOrRelease(promptForFilename(stage));
+		return true;
+	}
+
+	/**
+	 * Stops the drawing process like stopRecording(Stage), but saves the canvas to the given file without asking, for
+	 * when the program is closing.
+	 *
+	 * @param file File in which to save the image
+	 * @return True if a recording was stopped
+	 */
+	public boolean stopRecording(final File file) {
+		if (!endRecording())
+			return false;
+		saveOrRelease(file);
+		return true;
+	}
+
+	/**
+	 * Removes the mouse and keyboard trackers, closes the journal, draws the commands left in the buffer, and writes
+	 * a last checkpoint, waiting for it, so the checkpoint on disk matches the canvas that is saved.
+	 *
+	 * @return False if nothing was being recorded
+	 */
+	private boolean endRecording() {
 		if (state == State.STOPPED)
 			return false;
 		state = State.STOPPED;
 
-		GlobalScreen.removeNativeMouseMotionListener(mouseHook);
-		GlobalScreen.removeNativeMouseListener(mouseHook);
-		GlobalScreen.removeNativeKeyListener(keyboardHook);
-
-		promptForFilename(stage);
+		inputSource.removeListener(mouseHook);
+		inputSource.removeListener(keyboardHook);
+		closeJournal();
 
+		finishDrawing();
+		if (checkpointer != null) {
+			checkpointer.close();
+			checkpointer = null;
+		}
 		return true;
 	}
 
+	/**
+	 * Hands the canvas of the recording that was just ended over to the save pipeline, or releases it if there is no
+	 * file to save it to.
+	 *
+	 * @param file File in which to save the image, or null to discard it
+	 */
+	private void saveOrRelease(File file) {
+		if (file != null)
+			saveImage(file);
+		else
+			target.close(); // Nothing to save, release the canvas, and its backing file if it is memory-mapped
+
+		// The save pipeline owns the canvas now, the next recording will draw on a new one
+		Metrics.setRecording(null, null);
+		target = null;
+		drawer = null;
+		commands = null;
+		mouseHook = null;
+		keyboardHook = null;
+	}
+
+	/**
+	 * Closes the journal of the current recording, if there is one.
+	 */
+	public void closeJournal() {
+		if (journal == null)
+			return;
+		inputSource.removeListener(journal);
+		try {
+			journal.close();
+		} catch (IOException e) {
+			System.err.println("Error closing input journal");
+		}
+		journal = null;
+	}
+
 	/**
 	 * Prompts user (using system file chooser) for a file name and a destination for the file graphically.
-	 * Then saves image as a '.png' in the requested directory, under the requested name.
 	 *
 	 * @param stage JavaFX stage, required for FileChooser
+	 * @return File chosen by the user, or null if the user cancelled the dialog
 	 */
-	private void promptForFilename(final Stage stage) {
-		stage.setTitle("iArt - Saving to disk...");
-
+	private File promptForFilename(final Stage stage) {
 		FileChooser fileChooser = new FileChooser();
 		fileChooser.getExtensionFilters().addAll(
 				new FileChooser.ExtensionFilter("PNG Files (*.png)", "*.png")
@@ -126,11 +394,7 @@ public class Recorder {
 		fileChooser.setInitialDirectory(new File(Main.iArtFolderPath));
 
 		// Show system file chooser (choose file name and save destination)
-		File file = fileChooser.showSaveDialog(stage);
-
-		saveImage(file);
-
-		stage.setTitle("iArt");
+		return fileChooser.showSaveDialog(stage);
 	}
 
 	/**
@@ -147,75 +411,16 @@ public class Recorder {
 	}
 
 	/**
-	 * Saves the current canvas to the file passed as an argument.
+	 * Queues the current render target to be saved to the file passed as an argument, by the save pipeline. The image
+	 * is compressed in parallel, using as many threads as set in pngThreads, and streamed to disk a strip of rows at
+	 * a time, so no full size copy of the image is made. The render thread is stopped first, if it is still running,
+	 * since nothing must be drawn on the render target afterwards.
 	 *
-	 * @param file File in which to save the image on the canvas
+	 * @param file File in which to save the image on the render target
 	 */
 	public void saveImage(final File file) {
-		if (file != null) {
-			WritableImage img = tiledNodeSnapshot(canvas);
-			try {
-				ImageIO.write(SwingFXUtils.fromFXImage(img, null), "png",
-							  file);
-			} catch (IOException e) {
-				System.err.println("Error writing image to disk");
-			}
-		}
-	}
-
-	/**
-	 * Takes a snapshot of a Node instance by tiling the image, taking a snapshot of each tile, and stitching the
-	 * tiles together to form the full snapshot of the Node. This is done to prevent a crash which is caused by taking
-	 * a snapshot of large images.
-	 *
-	 * @param node Node to take a snapshot of
-	 */
-	public static WritableImage tiledNodeSnapshot(final Node node) {
-		int width = (int) node.getLayoutBounds().getWidth();
-		int height = (int) node.getLayoutBounds().getHeight();
-		WritableImage image = new WritableImage(width, height);
-
-		/*
-		 * 1,000,000 (1,000 x 1,000) pixels per snapshot is a reasonable number to expect JavaFX to be able to handle,
-		 * it is an arbitrary value that is known to work.
-		 */
-		int horTiles = getNumOfTiles(width, 1000);
-		int vertTiles = getNumOfTiles(height, 1000);
-
-		int tileWidth = width / horTiles;
-		int tileHeight = height / vertTiles;
-
-		try {
-			for (int col = 0; col < vertTiles; col++) {
-				for (int row = 0; row < horTiles; row++) {
-					int x = row * tileWidth;
-					int y = col * tileHeight;
-					SnapshotParameters params = new SnapshotParameters();
-					params.setViewport(new Rectangle2D(x, y, tileWidth, tileHeight));
-
-					image.getPixelWriter().setPixels(x, y, tileWidth, tileHeight,
-													 node.snapshot(params, null).getPixelReader(), 0, 0);
-				}
-			}
-		} catch (Exception e) {
-			System.err.println("Error tiling and stitching the image.");
-		}
-
-		return image;
-	}
-
-	/**
-	 * Given a size and a maximum number of pixels to be used on one of the sides of a tile, when breaking down a
-	 * larger image, this method returns the number of tiles that are required to evenly split the pixels of the
-	 * larger image amongst the tiles, as well as have less pixels on one side of the tile than the specified maximum.
-	 *
-	 * @param size         Size of one of the sides of the tile (width or height)
-	 * @param maxPxPerTile Maximum length one of the sides of the tile can have (max width or height of each tile)
-	 * @return Number of tiles to be used that accommodates the requirements
-	 */
-	private static int getNumOfTiles(int size, int maxPxPerTile) {
-		int tiles = 1;
-		for (; size / tiles > maxPxPerTile || size % tiles != 0; tiles++) ;
-		return tiles;
+		finishDrawing();
+		if (file != null && target != null)
+			savePipeline.submit(target, file, pngCompressionLevel, pngThreads);
 	}
 }
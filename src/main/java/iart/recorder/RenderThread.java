@@ -0,0 +1,153 @@
+package iart.recorder;
+
+import iart.draw.DrawCommandBuffer;
+import iart.draw.Drawer;
+import iart.draw.PreviewFrames;
+import iart.draw.RasterRenderTarget;
+import iart.draw.TiledRenderTarget;
+import iart.metrics.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread that draws a recording. While the recording is in progress, it is the only thread that touches the canvas
+ * and its preview: it drains the commands the listeners add to the command buffer, draws them, checkpoints the canvas,
+ * and publishes preview frames, which the JavaFX application thread only has to present. Heavy drawing does not make
+ * the UI stutter this way, and the UI does not hold up the drawing.
+ */
+class RenderThread extends Thread {
+	private static final long drainIntervalNanos = 4_000_000L; // Time between drains of the command buffer
+
+	private final TiledRenderTarget target;
+	private final Drawer drawer;
+	private final DrawCommandBuffer commands;
+	private final Checkpointer checkpointer;
+	private final PreviewFrames previewFrames = new PreviewFrames();
+
+	private final AtomicLong requestedPreviewSize = new AtomicLong(-1); // Width in the high half, height in the low
+	private volatile boolean running = true;
+
+	private long lastCheckpoint, lastFrame; // Times of the last checkpoint and preview frame, in nanoseconds
+	private long frameInputTime; // Time the oldest input event drawn since the last frame was received, 0 if unknown
+
+	/**
+	 * Prepares to draw on a canvas. The thread must be started to begin drawing.
+	 *
+	 * @param target       Canvas to draw on
+	 * @param drawer       Drawer that draws on the canvas
+	 * @param commands     Buffer from which to take the commands to draw
+	 * @param checkpointer Checkpointer of the canvas, or null if there are no checkpoints
+	 */
+	RenderThread(TiledRenderTarget target, Drawer drawer, DrawCommandBuffer commands, Checkpointer checkpointer) {
+		super("iArt render");
+		setDaemon(true);
+		this.target = target;
+		this.drawer = drawer;
+		this.commands = commands;
+		this.checkpointer = checkpointer;
+		lastCheckpoint = System.nanoTime();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			long start = System.nanoTime();
+			drawPendingCommands();
+
+			boolean resized = resizePreview(); // A new preview is published straight away
+			if (resized || start - lastFrame >= 1_000_000_000L / Math.max(Recorder.previewFps, 1)) {
+				lastFrame = start;
+				RasterRenderTarget preview = (RasterRenderTarget) drawer.getPreviewTarget();
+				if (preview != null && previewFrames.publish(preview, drawer.getDirtyRegion(), frameInputTime))
+					frameInputTime = 0;
+			}
+
+			long wait = drainIntervalNanos - (System.nanoTime() - start);
+			if (wait > 0)
+				LockSupport.parkNanos(this, wait);
+		}
+	}
+
+	/**
+	 * Draws all the commands the listeners have submitted since the last call, and checkpoints the canvas if it is
+	 * time to. Must only be called from the thread that owns the canvas.
+	 *
+	 * @return Number of commands drawn
+	 */
+	int drawPendingCommands() {
+		long start = Metrics.now();
+		int drawn = commands.drain(drawer);
+		drawer.flush(); // Draws the mouse path collected since the last drain
+
+		if (Metrics.enabled && drawn > 0) {
+			long drawnAt = System.nanoTime(), oldest = commands.getOldestDrained();
+			Metrics.drawTime.record(drawnAt - start);
+			if (oldest != 0) {
+				Metrics.drawLatency.record(drawnAt - oldest);
+				if (frameInputTime == 0)
+					frameInputTime = oldest;
+			}
+		}
+
+		long now = System.nanoTime();
+		if (checkpointer != null && now - lastCheckpoint >= Recorder.checkpointInterval * 1_000_000_000L) {
+			lastCheckpoint = now;
+			checkpointer.checkpoint(false);
+		}
+		return drawn;
+	}
+
+	/**
+	 * Asks the thread to replace the preview with one of the given size, sampled from the canvas, before the next
+	 * preview frame. Can be called from any thread.
+	 *
+	 * @param width  Width of the preview in pixels
+	 * @param height Height of the preview in pixels
+	 */
+	void requestPreviewSize(int width, int height) {
+		requestedPreviewSize.set((long) width << 32 | height);
+		LockSupport.unpark(this);
+	}
+
+	private boolean resizePreview() {
+		long size = requestedPreviewSize.getAndSet(-1);
+		if (size < 0)
+			return false;
+
+		int width = (int) (size >>> 32), height = (int) size;
+		RasterRenderTarget preview = new RasterRenderTarget(width, height, target.getLineQuality());
+		target.sample(preview.getPixels(), width, height, 0, 0, width, height);
+		drawer.setPreviewTarget(preview);
+		drawer.getDirtyRegion().addAll(width, height);
+		return true;
+	}
+
+	/**
+	 * Returns the frames through which the preview is handed over to the thread presenting it.
+	 *
+	 * @return Preview frames of the recording
+	 */
+	PreviewFrames getPreviewFrames() {
+		return previewFrames;
+	}
+
+	/**
+	 * Stops the thread and waits for it to end. The canvas belongs to the calling thread afterwards, and the commands
+	 * left in the buffer are not drawn.
+	 */
+	void finish() {
+		running = false;
+		LockSupport.unpark(this);
+		boolean interrupted = false;
+		while (isAlive()) {
+			try {
+				join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
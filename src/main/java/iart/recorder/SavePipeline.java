@@ -0,0 +1,108 @@
+package iart.recorder;
+
+import iart.draw.PixelSource;
+import iart.image.PngWriter;
+import iart.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves finished recordings to disk in the background. When a recording is stopped, its render target is handed to
+ * this class and the recorder is free to start a new recording on a fresh target straight away, while the previous
+ * one is still being encoded. Saves are processed one at a time, in the order they were submitted, each of them
+ * using the parallel PNG encoder.
+ * <p>
+ * A shutdown hook makes sure all pending saves are finished before the JVM exits.
+ */
+public class SavePipeline {
+	/**
+	 * Receives updates on the progress of the saves. Called from the saving thread.
+	 */
+	public interface ProgressListener {
+		/**
+		 * Called when a save is submitted, makes progress, or finishes.
+		 *
+		 * @param pendingSaves Number of saves that have not finished yet, including the one in progress
+		 * @param progress     Progress of the save in progress, from 0 to 1
+		 */
+		void progressChanged(int pendingSaves, double progress);
+	}
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "iArt save");
+		thread.setDaemon(true); // Does not keep the JVM alive by itself, the shutdown hook waits for it instead
+		return thread;
+	});
+	private final AtomicInteger pendingSaves = new AtomicInteger();
+	private volatile ProgressListener progressListener = (pendingSaves, progress) -> {
+	};
+
+	public SavePipeline() {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "iArt save flush"));
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Queues a render target to be saved to a file. The target must not be drawn on after it is submitted, and if it
+	 * holds resources that need releasing, it is closed once it has been saved.
+	 *
+	 * @param target           Render target holding the finished image
+	 * @param file             File in which to save the image
+	 * @param compressionLevel Deflate compression level to encode the PNG file with
+	 * @param threads          Number of threads with which to encode the PNG file
+	 */
+	public void submit(final PixelSource target, final File file, final int compressionLevel, final int threads) {
+		progressListener.progressChanged(pendingSaves.incrementAndGet(), 0);
+		executor.execute(() -> {
+			PngWriter writer = new PngWriter(target, compressionLevel, threads);
+			writer.setProgressListener(progress -> progressListener.progressChanged(pendingSaves.get(), progress));
+			long start = Metrics.now();
+			try {
+				writer.write(file.toPath());
+				if (Metrics.enabled)
+					Metrics.saveTime.record(System.nanoTime() - start);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Error writing image to disk");
+			}
+			if (target instanceof Closeable) {
+				try {
+					((Closeable) target).close();
+				} catch (IOException e) {
+					System.err.println("Error releasing canvas");
+				}
+			}
+			progressListener.progressChanged(pendingSaves.decrementAndGet(), 1);
+		});
+	}
+
+	/**
+	 * Returns the number of saves that have not finished yet.
+	 *
+	 * @return Number of pending saves, including the one in progress
+	 */
+	public int getPendingSaves() {
+		return pendingSaves.get();
+	}
+
+	/**
+	 * Blocks until all submitted saves have been written to disk. No more saves can be submitted afterwards.
+	 */
+	public void flush() {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+				System.out.println("Waiting for " + pendingSaves.get() + " image(s) to be saved...");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package iart.recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock of the session being drawn, which color schemes whose colors change over time read instead of the wall clock,
+ * so a session rendered again from its journal gets the same colors every time.
+ * <p>
+ * The clock does not run on its own, the mouse and keyboard hooks move it forward to the time of each input event
+ * they receive. During a live recording that is System.nanoTime() when the event arrived, and when a journal is
+ * replayed, it is the time recorded in the journal, from 0. Shapes are colored when the render thread draws them, so
+ * during a live recording they may get the time of an event that arrived after theirs, by a few milliseconds at most.
+ */
+public final class SessionClock {
+	private static volatile long start;
+	private static final AtomicLong now = new AtomicLong(); // Time of the latest event, never goes back
+
+	private SessionClock() {
+	}
+
+	/**
+	 * Starts the clock of a new session.
+	 *
+	 * @param startTime Time the session starts at, on the same clock as the times of its events
+	 */
+	public static void startSession(long startTime) {
+		start = startTime;
+		now.set(startTime);
+	}
+
+	/**
+	 * Moves the clock forward to the time of an input event. Events delivered out of order by different threads do
+	 * not move it back.
+	 *
+	 * @param time Time of the event, in nanoseconds
+	 */
+	public static void advance(long time) {
+		now.accumulateAndGet(time, Math::max);
+	}
+
+	/**
+	 * Returns the time elapsed since the session started, up to the latest input event.
+	 *
+	 * @return Milliseconds since the start of the session
+	 */
+	public static long millis() {
+		return (now.get() - start) / 1_000_000;
+	}
+}
@@ -0,0 +1,97 @@
+package iart.recorder;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source of the random numbers used by the hooks and the color schemes. Every thread gets its own SplittableRandom,
+ * split from the one seeded with the seed of the current session, so threads never share state, and no locks are
+ * taken, except the first time each thread asks for its stream in a session.
+ * <p>
+ * Streams are split in the order threads first ask for them, so a session replayed on a single thread, as
+ * JournalRenderer does, draws exactly the same random numbers every time it is replayed with the same seed. The seed
+ * is stored in the input journal for that reason.
+ */
+public final class SessionRandom {
+	private static volatile Session session = new Session(newSeed());
+
+	private static final ThreadLocal<ThreadStream> streams = new ThreadLocal<>();
+
+	private SessionRandom() {
+	}
+
+	/**
+	 * Starts a new session, after which every thread gets a new stream the next time it asks for one.
+	 *
+	 * @param seed Seed of the session, from which all the streams are split
+	 */
+	public static void startSession(long seed) {
+		session = new Session(seed);
+	}
+
+	/**
+	 * Returns the seed of the current session.
+	 *
+	 * @return Seed from which all the streams of the current session are split
+	 */
+	public static long getSeed() {
+		return session.seed;
+	}
+
+	/**
+	 * Picks a seed for a new session that is not meant to be reproduced, such as a live recording.
+	 *
+	 * @return Random seed
+	 */
+	public static long newSeed() {
+		return new SplittableRandom().nextLong();
+	}
+
+	/**
+	 * Returns the stream of the calling thread for the current session. The stream must not be handed to other
+	 * threads.
+	 *
+	 * @return Random number generator of the calling thread
+	 */
+	public static SplittableRandom current() {
+		Session session = SessionRandom.session;
+		ThreadStream stream = streams.get();
+		if (stream == null || stream.session != session) {
+			stream = new ThreadStream(session, session.split());
+			streams.set(stream);
+		}
+		return stream.random;
+	}
+
+	/**
+	 * Draws a double from the stream of the calling thread, as a replacement for Math.random().
+	 *
+	 * @return Random double between 0 (inclusive) and 1 (exclusive)
+	 */
+	public static double nextDouble() {
+		return current().nextDouble();
+	}
+
+	private static final class Session {
+		private final long seed;
+		private final SplittableRandom root;
+
+		private Session(long seed) {
+			this.seed = seed;
+			root = new SplittableRandom(seed);
+		}
+
+		private synchronized SplittableRandom split() {
+			return root.split();
+		}
+	}
+
+	private static final class ThreadStream {
+		private final Session session;
+		private final SplittableRandom random;
+
+		private ThreadStream(Session session, SplittableRandom random) {
+			this.session = session;
+			this.random = random;
+		}
+	}
+}